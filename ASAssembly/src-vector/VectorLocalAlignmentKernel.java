@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * The first pass of Alignment.getLocalAlignment with the Vector API. It is in its own source folder
+ * because it needs the jdk.incubator.vector module to be compiled and run:
+ * 		javac --add-modules jdk.incubator.vector -cp classes -d classes src-vector/*.java
+ * 		java --add-modules jdk.incubator.vector -cp classes ESTAssembly ...
+ * Alignment loads it by its name when VectorLocalAlignment is 1, and uses ScalarLocalAlignmentKernel if it
+ * can not be loaded.
+ *
+ * A row is calculated with the same recurrence as the scalar pass,
+ * 		H[c] = max(0, diag + s(a, b[c]), up + GAP, H[c-1] + GAP),
+ * in two steps. The cells which do not depend on the left cell, T[c] = max(0, diag + s, up + GAP), are
+ * calculated one vector at a time. Then H[c] = max over k<=c of (T[k] + (c-k)*GAP), so with 
+ * U[k] = T[k] - k*GAP, H[c] = c*GAP + (the prefix maximum of U). The prefix maximum in a vector is done with
+ * log2(lanes) shifts, and the maximum of the previous vectors of the row is carried to the next one.
+ * All the values are exact integers, so the matrix is the same as the one of the scalar pass. The maximal
+ * cell of a row is only searched when the maximum of the row is bigger than the maximal score so far, so 
+ * the first maximal cell in the order of rows is found as in the scalar pass.
+ */
+public class VectorLocalAlignmentKernel implements LocalAlignmentKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final int MATCH = Alignment.LOCAL_MATCH;
+	private static final int MISMATCH = Alignment.LOCAL_MISMATCH;
+	private static final int GAP = Alignment.LOCAL_GAP;
+	private static final int CHECKPOINT_ROWS = Alignment.CHECKPOINT_ROWS;
+	private final int[] iota;	//0, 1, ..., LANES-1
+
+	public VectorLocalAlignmentKernel() {
+		iota = new int[LANES];
+		for (int i=0; i<LANES; i++) {
+			iota[i] = i;
+		}
+	}
+
+	public void forwardPass(AlignWorkspace w, int[] max) {
+		byte[] b1 = w.seq1;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		int width = n2 + 1;
+		w.loadInts2();
+		int[] b2 = w.ints2;
+		int[] prev = w.prev;
+		int[] cur = w.cur;
+		int[] checkpoints = w.checkpoints;
+		IntVector lanes = IntVector.fromArray(SPECIES, iota, 0);
+		int vecEnd = 1 + (n2 / LANES) * LANES;	//the columns from 1 to vecEnd-1 are done with vectors
+
+		Arrays.fill(prev, 0, width, 0);
+		cur[0] = 0;
+		Arrays.fill(checkpoints, 0, width, 0);
+		int maxScore = 0;
+		int maxRow = 0;
+		int maxCol = 0;
+		for (int r=1; r<=n1; r++) {
+			int a = b1[r-1];
+			int carry = 0;	//the prefix maximum of U before the column c, U[0] = H[0] = 0
+			IntVector rowMax = IntVector.zero(SPECIES);
+			for (int c=1; c<vecEnd; c+=LANES) {
+				IntVector diag = IntVector.fromArray(SPECIES, prev, c-1);
+				IntVector up = IntVector.fromArray(SPECIES, prev, c);
+				VectorMask<Integer> eq = IntVector.fromArray(SPECIES, b2, c-1).compare(VectorOperators.EQ, a);
+				IntVector s = IntVector.broadcast(SPECIES, MISMATCH).blend(MATCH, eq);
+				IntVector t = diag.add(s).max(up.add(GAP)).max(0);
+				IntVector k = lanes.add(c);		//the columns
+				IntVector u = t.sub(k.mul(GAP));	//U >= 0, so the lanes which are shifted in can be 0
+				for (int shift=1; shift<LANES; shift<<=1) {
+					u = u.max(u.unslice(shift));
+				}
+				u = u.max(carry);
+				carry = u.lane(LANES-1);
+				IntVector h = u.add(k.mul(GAP));
+				h.intoArray(cur, c);
+				rowMax = rowMax.max(h);
+			}
+			int best = rowMax.reduceLanes(VectorOperators.MAX);
+			for (int c=vecEnd; c<=n2; c++) {
+				int s = (a == b2[c-1]) ? MATCH : MISMATCH;
+				int h = Math.max(Math.max(prev[c-1] + s, prev[c] + GAP), Math.max(cur[c-1] + GAP, 0));
+				cur[c] = h;
+				best = Math.max(best, h);
+			}
+			if (best > maxScore) {
+				maxScore = best;
+				maxRow = r;
+				maxCol = 1;
+				while (cur[maxCol] != best) {
+					maxCol++;
+				}
+			}
+			if (r % CHECKPOINT_ROWS == 0) {
+				System.arraycopy(cur, 0, checkpoints, (r / CHECKPOINT_ROWS) * width, width);
+			}
+			int[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		max[0] = maxScore;
+		max[1] = maxRow;
+		max[2] = maxCol;
+	}
+}
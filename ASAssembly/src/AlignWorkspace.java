@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/*
+ * Reusable buffers for the score-only global alignment and the local alignment in Alignment.java.
+ * Alignment keeps one workspace for each thread, so aligning two strings does not allocate any array. 
+ * The buffers grow when longer strings are met and are overwritten by the next call in the same thread.
+ */
+public class AlignWorkspace {
+	byte[] seq1;	//the characters of the two strings, one byte for each
+	byte[] seq2;
+	int len1;
+	int len2;
+	int[] prev;		//the two rows of the dynamic programming
+	int[] cur;
+	long[] peq;		//the bit vectors of the edit distance, see "getEditDistance" in Alignment.java
+	long[] pv;
+	long[] mv;
+	int[] checkpoints;	//the saved rows of the local alignment, see "getLocalAlignment" in Alignment.java
+	int[] block;		//the rows of the local alignment which are recalculated for the traceback
+	int[] ints2;	//seq2 as ints for the vector kernel of the local alignment
+
+	public AlignWorkspace() {
+		seq1 = new byte[0];
+		seq2 = new byte[0];
+		prev = new int[0];
+		cur = new int[0];
+		peq = new long[0];
+		pv = new long[0];
+		mv = new long[0];
+		checkpoints = new int[0];
+		block = new int[0];
+		ints2 = new int[0];
+	}
+
+	/*
+	 * put the two strings into seq1 and seq2.
+	 * @return false if some character does not fit into one byte, then the buffers can not be used.
+	 */
+	boolean load(String s1, String s2) {
+		len1 = s1.length();
+		len2 = s2.length();
+		if (seq1.length < len1) {
+			seq1 = new byte[Math.max(len1, seq1.length * 2)];
+		}
+		if (seq2.length < len2) {
+			seq2 = new byte[Math.max(len2, seq2.length * 2)];
+		}
+		return encode(s1, seq1) && encode(s2, seq2);
+	}
+
+	private static boolean encode(String s, byte[] buf) {
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if (c > 0xff) {
+				return false;
+			}
+			buf[i] = (byte) c;
+		}
+		return true;
+	}
+
+	/*
+	 * make sure the rows have at least "len" cells.
+	 */
+	void ensureRows(int len) {
+		if (prev.length < len) {
+			int l = Math.max(len, prev.length * 2);
+			prev = new int[l];
+			cur = new int[l];
+		}
+	}
+
+	/*
+	 * make sure the buffers of the local alignment have at least so many cells.
+	 */
+	void ensureLocal(int numCheckpoints, int numBlock) {
+		if (checkpoints.length < numCheckpoints) {
+			checkpoints = new int[Math.max(numCheckpoints, checkpoints.length * 2)];
+		}
+		if (block.length < numBlock) {
+			block = new int[Math.max(numBlock, block.length * 2)];
+		}
+	}
+
+	/*
+	 * copy seq2 into ints2.
+	 */
+	void loadInts2() {
+		if (ints2.length < len2) {
+			ints2 = new int[Math.max(len2, ints2.length * 2)];
+		}
+		for (int i=0; i<len2; i++) {
+			ints2[i] = seq2[i];
+		}
+	}
+
+	/*
+	 * make sure the bit vectors have at least "numBlocks" words, and clear the match vectors.
+	 */
+	void prepareBlocks(int numBlocks) {
+		if (pv.length < numBlocks) {
+			int l = Math.max(numBlocks, pv.length * 2);
+			peq = new long[4 * l];
+			pv = new long[l];
+			mv = new long[l];
+		} else {
+			Arrays.fill(peq, 0, 4 * numBlocks, 0);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Properties;
 
 import neobio.alignment.BasicScoringScheme;
@@ -18,10 +19,38 @@ public class Alignment {
 	protected final int INT_MAX = Integer.MAX_VALUE;
 	protected int alignmentThreshold; //It is used in NewD2 class. It's the threshold for alignment. That is, all the alignment with
 											// the distance which is bigger than the value will be seen as infinity. 
+	protected double indelRate;	//expected rate of insertions and deletions, it decides the band width in getDistance.
+	private static final int MIN_BAND = 4;	//the band has at least so many diagonals on each side.
+	private static final int NEG_INF = Integer.MIN_VALUE / 2;	//score of the cells out of the band
+	// the scores of getDistance, they are the same as the ones of BasicScoringScheme in getNeobioSimilarityScore.
+	private static final int MATCH = 1;
+	private static final int MISMATCH = -2;
+	private static final int GAP = -3;
+	// the scores of getLocalAlignment, they are the same as the ones of BasicScoringScheme in getNeobioLocalAlignment.
+	static final int LOCAL_MATCH = 1;
+	static final int LOCAL_MISMATCH = -1;
+	static final int LOCAL_GAP = -2;
+	static final int CHECKPOINT_ROWS = 32;	//one row of every so many rows is saved in getLocalAlignment
+	private static final String VECTOR_KERNEL = "VectorLocalAlignmentKernel";	//the class in src-vector
+	private ThreadLocal<AlignWorkspace> workspace;	//buffers of the alignments, one for each thread.
+	LocalAlignmentKernel localKernel;	//the first pass of getLocalAlignment, the scalar or the vector kernel
 
 	
 	public Alignment(Properties props) {
 		alignmentThreshold = Integer.parseInt(props.getProperty("alignmentThreshold"));
+		indelRate = Double.parseDouble(props.getProperty("ExpectedIndelRate", "0.02"));
+		localKernel = null;
+		if (Integer.parseInt(props.getProperty("VectorLocalAlignment", "0")) == 1) {
+			localKernel = loadVectorKernel();
+		}
+		if (localKernel == null) {
+			localKernel = new ScalarLocalAlignmentKernel();
+		}
+		workspace = new ThreadLocal<AlignWorkspace>() {
+			protected AlignWorkspace initialValue() {
+				return new AlignWorkspace();
+			}
+		};
 	}
 	
 	/*
@@ -32,11 +61,50 @@ public class Alignment {
 	 * @return int distance.
 	 */
 	public int getDistance(String s1, String s2) {
-		int score = getSimlarityScore(s1, s2);
+		int n1 = s1.length();
+		int n2 = s2.length();
+		AlignWorkspace w = workspace.get();
+		if (!w.load(s1, s2)) {
+			return scoreToDistance(getNeobioSimilarityScore(s1, s2), n1);
+		}
+		
+		/*
+		 * Every alignment has at least "edit distance" mismatches and gaps, and each of them costs at 
+		 * least 3 (a mismatch loses a match and gets -2, a gap of one base gets -3 and covers half of the
+		 * bases of a match), so the score is not bigger than (n1+n2)/2 - 3*editDistance.
+		 */
+		if (canStop((n1 + n2) / 2 - 3 * getEditDistance(w), n1)) {
+			return INT_MAX;
+		}
+		int band = MIN_BAND + (int)Math.ceil(indelRate * Math.max(n1, n2));
+		int score = getBandedSimilarityScore(w, band);
+		
+		/*
+		 * A path which leaves the band has at least |n2-n1|+2*(band+1) gaps, so its score is not bigger than
+		 * "bound". If the score in the band is smaller than that, the full DP is done, unless even "bound" 
+		 * is too low to give a distance (then the distance is INT_MAX whatever the full score is).
+		 */
+		if ((Math.min(0, n2-n1) - band > -n1) || (Math.max(0, n2-n1) + band < n2)) {
+			int gaps = Math.abs(n2-n1) + 2 * (band+1);
+			int bound = (n1 + n2 - gaps) / 2 - 3 * gaps;
+			if ((score < bound) && (scoreToDistance(bound, n1) != INT_MAX)) {
+				score = getSimilarityScore(w);
+			}
+		}
+		if (score < 0) {
+			score = 0;
+		}
+		return scoreToDistance(score, n1);
+	}
+
+	/*
+	 * convert the similarity score to the distance.
+	 * @param length the length of s1.
+	 */
+	private int scoreToDistance(int score, int length) {
 		int retVal = INT_MAX;
-		if (score != 0) {
+		if (score > 0) {
 			//int length = s1.length() + s2.length() - score;
-			int length = s1.length();
 			retVal = (int)((1 - (double)score/length) * 100);
 		}
 		
@@ -47,11 +115,195 @@ public class Alignment {
 	}
 
 	/*
-	 * Use Needleman-Wunsch algorithm to calculate similarity score of two string.
+	 * Every path goes through row i, and each of the remaining n1-i rows adds at most MATCH to it. So the 
+	 * final score is not bigger than the maximum of row i plus n1-i. If even this bound gives the distance 
+	 * INT_MAX, so does the final score, and the rest of the rows need not be calculated.
+	 * @param bound the bound after row i.
+	 * @param n1 the length of s1.
+	 */
+	private boolean canStop(int bound, int n1) {
+		return scoreToDistance(bound, n1) == INT_MAX;
+	}
+
+	/*
+	 * The edit distance (the least number of mismatches, insertions and deletions) between the two strings 
+	 * in the workspace, with the bit-parallel algorithm of Myers (1999) for the global distance: 
+	 * s1 is split into blocks of 64 bases and every column of s2 is calculated with a few operations on 
+	 * each block. The bases are compared by their 2-bit codes, and a base which is not A/C/G/T matches 
+	 * any base, so the result is never bigger than the edit distance of the strings.
+	 * 
+	 * pv/mv are the positive/negative vertical differences of the current column, and peq[c*numBlocks+b] 
+	 * has the bits of block b where s1 has the base c.
+	 */
+	private int getEditDistance(AlignWorkspace w) {
+		byte[] s1 = w.seq1;
+		byte[] s2 = w.seq2;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		if (n1 == 0) {
+			return n2;
+		}
+		int numBlocks = (n1 + 63) >>> 6;
+		w.prepareBlocks(numBlocks);
+		long[] peq = w.peq;
+		long[] pv = w.pv;
+		long[] mv = w.mv;
+		
+		for (int i=0; i<n1; i++) {
+			int code = D2.encodeBase((char)(s1[i] & 0xff));
+			long bit = 1L << (i & 63);
+			int b = i >>> 6;
+			for (int c=0; c<4; c++) {
+				if ((code < 0) || (code == c)) {
+					peq[c*numBlocks + b] |= bit;
+				}
+			}
+		}
+		for (int b=0; b<numBlocks; b++) {
+			pv[b] = -1L;	//D[i][0] = i
+			mv[b] = 0;
+		}
+		long lastBit = 1L << ((n1 - 1) & 63);
+		int dis = n1;
+		for (int j=0; j<n2; j++) {
+			int code = D2.encodeBase((char)(s2[j] & 0xff));
+			int hin = 1;	//D[0][j] = j
+			for (int b=0; b<numBlocks; b++) {
+				long eq = (code < 0) ? -1L : peq[code*numBlocks + b];
+				long p = pv[b];
+				long m = mv[b];
+				long xv = eq | m;
+				if (hin < 0) {
+					eq |= 1;
+				}
+				long xh = (((eq & p) + p) ^ p) | eq;
+				long ph = m | ~(xh | p);
+				long mh = p & xh;
+				long high = (b == numBlocks - 1) ? lastBit : Long.MIN_VALUE;
+				int hout = 0;
+				if ((ph & high) != 0) {
+					hout = 1;
+				} else if ((mh & high) != 0) {
+					hout = -1;
+				}
+				ph <<= 1;
+				mh <<= 1;
+				if (hin < 0) {
+					mh |= 1;
+				} else if (hin > 0) {
+					ph |= 1;
+				}
+				pv[b] = mh | ~(xv | ph);
+				mv[b] = ph & xv;
+				hin = hout;
+			}
+			dis += hin;
+		}
+		return dis;
+	}
+
+	/*
+	 * The same global alignment score as getSimilarityScore, but only the cells whose diagonal (j-i) is 
+	 * at most "band" away from the diagonals between 0 and n2-n1 are calculated. In OvlDistance the
+	 * substrings are cut at the offset found by D2, so this is the diagonal of that offset.
+	 * The result is the best score of the paths in the band, which is not clamped to zero; or a bigger value
+	 * if the calculation is stopped early (see "canStop").
+	 * 
+	 * Only one row of the band is kept: cur[k] is the cell (i, i+lo+k).
+	 * @param w the workspace which the two strings are loaded into.
+	 */
+	private int getBandedSimilarityScore(AlignWorkspace w, int band) {
+		byte[] s1 = w.seq1;
+		byte[] s2 = w.seq2;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		int lo = Math.min(0, n2-n1) - band;	//the lowest diagonal in the band
+		int width = Math.max(0, n2-n1) + band - lo + 1;
+		w.ensureRows(width+1);	//the last cell is always out of the band
+		int[] prev = w.prev;
+		int[] cur = w.cur;
+		
+		for (int k=0; k<=width; k++) {
+			int j = lo + k;
+			prev[k] = ((k < width) && (j >= 0) && (j <= n2)) ? (j * GAP) : NEG_INF;
+		}
+		cur[width] = NEG_INF;
+		for (int i=1; i<=n1; i++) {
+			byte c = s1[i-1];
+			int rowMax = NEG_INF;
+			for (int k=0; k<width; k++) {
+				int j = i + lo + k;
+				if ((j < 0) || (j > n2)) {
+					cur[k] = NEG_INF;
+				} else if (j == 0) {
+					cur[k] = i * GAP;
+				} else {
+					int sub = prev[k] + ((c == s2[j-1]) ? MATCH : MISMATCH);
+					int del = prev[k+1] + GAP;
+					int ins = (k > 0) ? (cur[k-1] + GAP) : NEG_INF;
+					cur[k] = Math.max(sub, Math.max(del, ins));
+				}
+				rowMax = Math.max(rowMax, cur[k]);
+			}
+			if (canStop(rowMax + (n1 - i) * MATCH, n1)) {
+				return rowMax + (n1 - i) * MATCH;
+			}
+			int[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		return prev[n2 - n1 - lo];
+	}
+
+	/*
+	 * The global alignment score of the two strings in the workspace, which is the same as the score of 
+	 * NeedlemanWunsch with BasicScoringScheme(MATCH, MISMATCH, GAP). Only two rows are kept, and the 
+	 * result is not clamped to zero.
+	 * The calculation is stopped early if the distance must be INT_MAX (see "canStop"), then the returned 
+	 * value is bigger than the score, but it gives the same distance.
+	 */
+	private int getSimilarityScore(AlignWorkspace w) {
+		byte[] s1 = w.seq1;
+		byte[] s2 = w.seq2;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		w.ensureRows(n2+1);
+		int[] prev = w.prev;
+		int[] cur = w.cur;
+		
+		for (int j=0; j<=n2; j++) {
+			prev[j] = j * GAP;
+		}
+		for (int i=1; i<=n1; i++) {
+			byte c = s1[i-1];
+			int left = i * GAP;
+			int rowMax = left;
+			cur[0] = left;
+			for (int j=1; j<=n2; j++) {
+				int sub = prev[j-1] + ((c == s2[j-1]) ? MATCH : MISMATCH);
+				int del = prev[j] + GAP;
+				int ins = left + GAP;
+				left = Math.max(sub, Math.max(del, ins));
+				cur[j] = left;
+				rowMax = Math.max(rowMax, left);
+			}
+			if (canStop(rowMax + (n1 - i) * MATCH, n1)) {
+				return rowMax + (n1 - i) * MATCH;
+			}
+			int[] tmp = prev;
+			prev = cur;
+			cur = tmp;
+		}
+		return prev[n2];
+	}
+
+	/*
+	 * Use Needleman-Wunsch algorithm of neobio to calculate similarity score of two string. It is only used 
+	 * for the strings which have some character bigger than one byte.
 	 * @param s1, s2
 	 * @return int similarity score(>=0), if the value is less than 0, it's set to be zero.
 	 */
-	private int getSimlarityScore(String s1, String s2) {
+	private int getNeobioSimilarityScore(String s1, String s2) {
 		int match = 1;
 		int mismatch = -2;
 		int gap = -3;
@@ -139,11 +391,144 @@ public class Alignment {
 	}
 
 	/*
-	 * Use Smith-Waterman algorithm to get local alignment.
+	 * Use Smith-Waterman algorithm to get local alignment. The result is exactly the same as the one of 
+	 * SmithWaterman in neobio (getNeobioLocalAlignment), but the whole matrix is not kept:
+	 * 	1) the matrix is calculated row by row, and the cell with the maximal score (the first one in the
+	 * 		order of rows) is found. Every CHECKPOINT_ROWS rows, the row is saved. It is done by the vector
+	 * 		kernel if it is loaded, or else by ScalarLocalAlignmentKernel;
+	 * 	2) the traceback goes up from the cell with the maximal score in the same way as neobio. The rows 
+	 * 		it needs are recalculated from the saved row above them, CHECKPOINT_ROWS rows at a time and 
+	 * 		only up to the column of the maximal cell (a cell only depends on the cells above and to its left).
+	 * So only the rows between the two ends of the alignment are calculated twice.
 	 * @param s1, s2
 	 * @return string[], [0] and [1] are the two aligned sequences, [2] is the pairwise alignment.
 	 */
 	public String[] getLocalAlignment(String s1, String s2) {
+		AlignWorkspace w = workspace.get();
+		if (!w.load(s1, s2)) {
+			return getNeobioLocalAlignment(s1, s2);
+		}
+		byte[] b1 = w.seq1;
+		byte[] b2 = w.seq2;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		int width = n2 + 1;
+		w.ensureRows(width);
+		w.ensureLocal((n1 / CHECKPOINT_ROWS + 1) * width, (CHECKPOINT_ROWS + 1) * width);
+		int[] max = new int[3];
+		localKernel.forwardPass(w, max);
+		int maxScore = max[0];
+		int maxRow = max[1];
+		int maxCol = max[2];
+		
+		// the traceback, the gapped sequences are filled from the end. The tags are the same as neobio:
+		// '|' for a match, ' ' for a mismatch or a gap.
+		int cols = maxCol + 1;	//the columns in the block
+		int[] block = w.block;
+		int blockStart = 0;		//the block has the rows from blockStart to blockStart+CHECKPOINT_ROWS
+		int len = maxRow + maxCol;
+		char[] gapped1 = new char[len];
+		char[] tags = new char[len];
+		char[] gapped2 = new char[len];
+		int pos = len;
+		int r = maxRow;
+		int c = maxCol;
+		if (r > 0) {
+			blockStart = loadLocalBlock(w, (r-1) / CHECKPOINT_ROWS * CHECKPOINT_ROWS, maxRow, cols);
+		}
+		while ((r > 0 || c > 0) && (block[(r-blockStart)*cols + c] > 0)) {
+			int cur = (r-blockStart)*cols + c;
+			pos--;
+			if ((c > 0) && (block[cur] == block[cur-1] + LOCAL_GAP)) {
+				// insertion
+				gapped1[pos] = '-';
+				tags[pos] = ' ';
+				gapped2[pos] = (char)(b2[c-1] & 0xff);
+				c--;
+			} else if ((r > 0) && (c > 0) && (block[cur] == block[cur-cols-1] + ((b1[r-1] == b2[c-1]) ? LOCAL_MATCH : LOCAL_MISMATCH))) {
+				// substitution
+				gapped1[pos] = (char)(b1[r-1] & 0xff);
+				tags[pos] = (b1[r-1] == b2[c-1]) ? '|' : ' ';
+				gapped2[pos] = (char)(b2[c-1] & 0xff);
+				r--;
+				c--;
+			} else {
+				// must be a deletion
+				gapped1[pos] = (char)(b1[r-1] & 0xff);
+				tags[pos] = ' ';
+				gapped2[pos] = '-';
+				r--;
+			}
+			if ((r > 0) && (r == blockStart)) {
+				blockStart = loadLocalBlock(w, blockStart - CHECKPOINT_ROWS, maxRow, cols);
+			}
+		}
+		
+		String[] strs = new String[3];
+		strs[0] = new String(gapped1, pos, len - pos);
+		strs[1] = new String(gapped2, pos, len - pos);
+		strs[2] = strs[0] + "\n" + new String(tags, pos, len - pos) + "\n" + strs[1] + "\nScore: " + maxScore;
+		return strs;
+	}
+
+	/*
+	 * Load the vector kernel of getLocalAlignment by its name, so this class is compiled and run without 
+	 * the Vector API. It is only found if src-vector is compiled into the class path, and it can only be
+	 * loaded if the jdk.incubator.vector module is added, e.g. 
+	 * 		javac --add-modules jdk.incubator.vector -cp classes -d classes src-vector/*.java
+	 * 		java --add-modules jdk.incubator.vector -cp classes ESTAssembly ...
+	 * @return the kernel, null if it can not be loaded.
+	 */
+	private static LocalAlignmentKernel loadVectorKernel() {
+		try {
+			return (LocalAlignmentKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return null;		//the class is not compiled
+		} catch (LinkageError e) {
+			return null;		//the module is not added
+		}
+	}
+
+	/*
+	 * one cell of the Smith-Waterman matrix from its left, upper-left and upper cells.
+	 */
+	static int localCell(int left, int diag, int up, byte a, byte b) {
+		int ins = left + LOCAL_GAP;
+		int sub = diag + ((a == b) ? LOCAL_MATCH : LOCAL_MISMATCH);
+		int del = up + LOCAL_GAP;
+		return Math.max(Math.max(ins, sub), Math.max(del, 0));
+	}
+
+	/*
+	 * recalculate the rows from "start" to start+CHECKPOINT_ROWS (not after maxRow) of the local alignment
+	 * into the block of the workspace. The row "start" is copied from the saved rows.
+	 * @param cols only the columns before it are calculated.
+	 * @return start.
+	 */
+	private int loadLocalBlock(AlignWorkspace w, int start, int maxRow, int cols) {
+		byte[] b1 = w.seq1;
+		byte[] b2 = w.seq2;
+		int[] block = w.block;
+		System.arraycopy(w.checkpoints, (start / CHECKPOINT_ROWS) * (w.len2 + 1), block, 0, cols);
+		int end = Math.min(start + CHECKPOINT_ROWS, maxRow);
+		for (int r=start+1; r<=end; r++) {
+			byte a = b1[r-1];
+			int cur = (r-start) * cols;
+			block[cur] = 0;
+			for (int c=1; c<cols; c++) {
+				block[cur+c] = localCell(block[cur+c-1], block[cur-cols+c-1], block[cur-cols+c], a, b2[c-1]);
+			}
+		}
+		return start;
+	}
+
+	/*
+	 * Use Smith-Waterman algorithm of neobio to get local alignment. It is only used for the strings 
+	 * which have some character bigger than one byte.
+	 * @param s1, s2
+	 * @return string[], [0] and [1] are the two aligned sequences, [2] is the pairwise alignment.
+	 */
+	String[] getNeobioLocalAlignment(String s1, String s2) {
 		int match = 1;
 		int mismatch = -1;
 		int gap = -2;
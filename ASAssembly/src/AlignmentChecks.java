@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+/*
+ * Checks of the faster alignment code against the code it replaces, on random sequences:
+ * 	1) getLocalAlignment in Alignment.java, with the scalar and the vector kernel (if it can be loaded),
+ * 		against SmithWaterman in neobio;
+ * 	2) NWSmart.getMatch in Match2.java with and without fork/join;
+ * 	3) AScore in Match2.java in tiles and column by column.
+ * It is not used by the assembly. Run it in the directory of config.properties:
+ * 		java AlignmentChecks
+ * 		java --add-modules jdk.incubator.vector AlignmentChecks		(if src-vector is compiled)
+ */
+public class AlignmentChecks {
+	public static void main(String args[]) {
+		Properties props = null;
+		try {
+			props = Alignment.getProperties("config.properties");
+		} catch (IOException e) {
+			System.err.println("Get config.properties failed, " + e);
+	    	return;
+		}
+		
+		Random rand = new Random(1);
+		int numDiff = checkLocalAlignment(props, rand);
+		numDiff += checkNWSmart(rand);
+		numDiff += checkAScore(rand);
+		System.out.println(numDiff + " checks are different");
+	}
+
+	/*
+	 * getLocalAlignment of Alignment with both kernels against neobio.
+	 * @return the number of the different pairs.
+	 */
+	private static int checkLocalAlignment(Properties props, Random rand) {
+		props.setProperty("VectorLocalAlignment", "1");
+		Alignment vector = new Alignment(props);
+		props.setProperty("VectorLocalAlignment", "0");
+		Alignment scalar = new Alignment(props);
+		System.out.println("vector kernel: " + ((vector.localKernel instanceof ScalarLocalAlignmentKernel) ? "not loaded" : "loaded"));
+		int numDiff = 0;
+		int numPairs = 300;
+		for (int i=0; i<numPairs; i++) {
+			String t1 = randomSeq(rand, rand.nextInt(300));
+			String t2 = mutate(rand, t1.substring(rand.nextInt(t1.length() + 1)) + randomSeq(rand, rand.nextInt(200)));
+			if (rand.nextInt(4) == 0) {
+				t2 = t2.toLowerCase();	//no match at all
+			}
+			String[] expected = scalar.getNeobioLocalAlignment(t1, t2);
+			if (!Arrays.equals(vector.getLocalAlignment(t1, t2), expected) || 
+					!Arrays.equals(scalar.getLocalAlignment(t1, t2), expected)) {
+				System.out.println("different local alignment: " + t1 + " " + t2);
+				numDiff++;
+			}
+		}
+		System.out.println("getLocalAlignment: " + numDiff + " of " + numPairs + " pairs are different from neobio");
+		return numDiff;
+	}
+
+	/*
+	 * NWSmart.getMatch with every half forked and with no fork.
+	 * @return the number of the different pairs.
+	 */
+	private static int checkNWSmart(Random rand) {
+		Substitution sub = new ForGene();
+		int[][] sizes = { {1, 1}, {2, 700}, {700, 2}, {300, 300}, {800, 700}, {1500, 90}, {90, 1500} };
+		int numDiff = 0;
+		for (int k=0; k<sizes.length; k++) {
+			String s1 = randomSeq(rand, sizes[k][0]);
+			String s2 = randomSeq(rand, sizes[k][1]);
+			if (sizes[k][0] == sizes[k][1]) {
+				s2 = mutate(rand, s1);
+			}
+			NWSmart al = new NWSmart(sub, 2, s1, s2);
+			String[] forked = NWSmart.getMatch(sub, 2, al.seq1, al.seq2, al.u, al.getV(), 0);
+			String[] sequential = NWSmart.getMatch(sub, 2, al.seq1, al.seq2, al.u, al.getV(), Long.MAX_VALUE);
+			if (!Arrays.equals(forked, sequential)) {
+				System.out.println("NWSmart.getMatch is different: " + s1.length() + " x " + s2.length());
+				numDiff++;
+			}
+		}
+		System.out.println("NWSmart: " + numDiff + " of " + sizes.length + " pairs are different without fork/join");
+		return numDiff;
+	}
+
+	/*
+	 * AScore in tiles and column by column: square, skewed, one tile wide.
+	 * @return the number of the different pairs.
+	 */
+	private static int checkAScore(Random rand) {
+		Substitution sub = new ForAScore();
+		int T = AScoreWavefront.TILE;
+		int[][] sizes = { {1, 300}, {300, 1}, {2*T, 2*T}, {3*T+17, 3*T+5}, {5*T, T/2}, {T/2, 5*T}, 
+				{T, 4*T+1}, {4*T+1, T}, {7*T+3, 2*T-1} };
+		int numDiff = 0;
+		for (int k=0; k<sizes.length; k++) {
+			// the shorter sequence is a mutated part of the longer one
+			int len1 = sizes[k][0];
+			int len2 = sizes[k][1];
+			String longer = randomSeq(rand, Math.max(len1, len2));
+			int start = rand.nextInt(longer.length() - Math.min(len1, len2) + 1);
+			String shorter = mutate(rand, longer.substring(start, start + Math.min(len1, len2)));
+			String s1 = (len1 <= len2) ? shorter : longer;
+			String s2 = (len1 <= len2) ? longer : shorter;
+			AScore tiled = new AScore(sub, 13, s1, s2, 0);
+			AScore columns = new AScore(sub, 13, s1, s2, Long.MAX_VALUE);
+			if ((tiled.getScore() != columns.getScore()) || (tiled.getV() != columns.getV())
+					|| !Arrays.equals(tiled.getMatch(), columns.getMatch())) {
+				System.out.println("AScore is different: " + s1.length() + " x " + s2.length());
+				numDiff++;
+			}
+		}
+		System.out.println("AScore: " + numDiff + " of " + sizes.length + " pairs are different in tiles");
+		return numDiff;
+	}
+
+	private static String randomSeq(Random rand, int len) {
+		char[] s = new char[len];
+		for (int i=0; i<len; i++) {
+			s[i] = "ACGT".charAt(rand.nextInt(4));
+		}
+		return new String(s);
+	}
+
+	//about 5% of the bases are changed, deleted or inserted.
+	private static String mutate(Random rand, String s) {
+		StringBuilder ret = new StringBuilder();
+		for (int i=0; i<s.length(); i++) {
+			int x = rand.nextInt(60);
+			if (x == 0) {
+				ret.append("ACGT".charAt(rand.nextInt(4)));
+			} else if (x == 1) {
+				ret.append(s.charAt(i)).append("ACGT".charAt(rand.nextInt(4)));
+			} else if (x != 2) {
+				ret.append(s.charAt(i));
+			}
+		}
+		return ret.toString();
+	}
+}
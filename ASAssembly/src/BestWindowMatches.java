@@ -0,0 +1,44 @@
+/*
+ * The best windows found by matchEndWindows. Only the first numBestLeftWindows elements of bestLeftStart 
+ * and the first numBestRightWindows elements of bestRightStart are valid.
+ */
+class BestWindowMatches {    
+	public int[] bestLeftStart;
+	public int numBestLeftWindows;
+	public int bestLeftD2;
+
+	public int[] bestRightStart;
+	public int numBestRightWindows;
+	public int bestRightD2;
+
+	public BestWindowMatches() {
+		set(new int[0], 0, 0, new int[0], 0, 0);
+	}
+
+	/*
+	 * reuse this object for a new result, the arrays are not copied.
+	 */
+	public void set(int[] leftStart, int numBestLeft, int leftD2, int[] rightStart, int numBestRight, int rightD2) {
+		bestLeftStart = leftStart;
+		numBestLeftWindows = numBestLeft;
+		bestLeftD2 = leftD2;
+
+		bestRightStart = rightStart;
+		numBestRightWindows = numBestRight;
+		bestRightD2 = rightD2;
+	}
+
+	public BestWindowMatches(int[] leftStart, int numBestLeft, int leftD2, int[] rightStart, int numBestRight, int rightD2) {
+		bestLeftStart = new int[numBestLeft];
+		for (int i=0; i < numBestLeft; i++)
+			bestLeftStart[i] = leftStart[i];
+		numBestLeftWindows = numBestLeft;
+		bestLeftD2 = leftD2;
+
+		bestRightStart = new int[numBestRight];
+		for (int i=0; i < numBestRight; i++)
+			bestRightStart[i] = rightStart[i];
+		numBestRightWindows = numBestRight;
+		bestRightD2 = rightD2;
+	}
+}
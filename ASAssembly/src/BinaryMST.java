@@ -0,0 +1,147 @@
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/*
+ * A binary format of the MST file, which is loaded much faster than the text file from PEACE.
+ *
+ * All the numbers are 4-byte little-endian integers:
+ * 		header: MAGIC, number of nodes, number of edges;
+ * 		records: one for each edge in the order of the text file, each has three integers:
+ * 				the index of the first node, the index of the second node, the weight.
+ * The root line of the text file ("-1,...") is not put into the binary file.
+ *
+ * usage: java BinaryMST textMstFile binaryMstFile
+ */
+public class BinaryMST {
+	static final int MAGIC = 0x3154534d;	//"MST1" in little-endian
+	static final int HEADER_SIZE = 12;
+	static final int RECORD_SIZE = 12;
+
+	/*
+	 * judge if the file is a binary MST file by the magic number at the beginning.
+	 */
+	public static boolean isBinary(File f) throws IOException {
+		if (f.length() < HEADER_SIZE) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try {
+			return Integer.reverseBytes(in.readInt()) == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Map the binary MST file and make an undirected MST in one pass.
+	 * @param nOfNodes number of nodes in the graph.
+	 * @return the MST, or null if the file does not match the graph (a wrong header, or a node index 
+	 * 		which is not in [0, nOfNodes)).
+	 */
+	public static CSRGraph load(File f, int nOfNodes) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		MappedByteBuffer buf;
+		try {
+			FileChannel ch = raf.getChannel();
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		} finally {
+			raf.close();
+		}
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		int nodes = buf.getInt(4);
+		int edges = buf.getInt(8);
+		if ((buf.getInt(0) != MAGIC) || (nodes != nOfNodes)
+				|| (buf.capacity() < HEADER_SIZE + (long) edges * RECORD_SIZE)) {
+			System.out.println("The binary MST file does not match the est file!");
+			return null;
+		}
+
+		// Make a undirected MST.
+		int[] us = new int[edges];
+		int[] vs = new int[edges];
+		double[] ws = new double[edges];
+		int pos = HEADER_SIZE;
+		for (int j=0; j<edges; j++) {
+			us[j] = buf.getInt(pos);
+			vs[j] = buf.getInt(pos+4);
+			ws[j] = buf.getInt(pos+8);
+			if ((us[j] < 0) || (us[j] >= nOfNodes) || (vs[j] < 0) || (vs[j] >= nOfNodes)) {
+				System.out.println("Edge " + j + " (" + us[j] + "," + vs[j] + ") of the binary MST file is out of the " 
+						+ nOfNodes + " nodes of the est file!");
+				return null;
+			}
+			pos += RECORD_SIZE;
+		}
+		return new CSRGraph(nOfNodes, false, us, vs, ws, edges);
+	}
+
+	/*
+	 * convert the text MST file to the binary one.
+	 */
+	public static void convert(String textFile, String binaryFile) throws IOException {
+		//read the edges in the same way as "readMST" in ESTAssembly.java
+		ArrayList<int[]> edges = new ArrayList<int[]> ();
+		BufferedReader in = new BufferedReader(new FileReader(textFile));
+		try {
+			String str = in.readLine();
+			while (str != null) {
+				str = str.trim();
+				if ((str.length() > 0) && (str.charAt(0) != '#')) {	//comment line begins from '#'
+					String[] paras = str.split(",");
+					if (Integer.parseInt(paras[0]) != -1) {	//-1 means root of MST
+						int[] e = new int[3];
+						e[0] = Integer.parseInt(paras[0]);
+						e[1] = Integer.parseInt(paras[1]);
+						e[2] = Integer.parseInt(paras[2]);
+						edges.add(e);
+					}
+				}
+				str = in.readLine();
+			}
+		} finally {
+			in.close();
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + edges.size() * RECORD_SIZE);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putInt(edges.size() + 1);	//there are n-1 edges in the MST of n nodes
+		buf.putInt(edges.size());
+		for (int j=0; j<edges.size(); j++) {
+			int[] e = edges.get(j);
+			buf.putInt(e[0]);
+			buf.putInt(e[1]);
+			buf.putInt(e[2]);
+		}
+		FileOutputStream out = new FileOutputStream(binaryFile);
+		try {
+			out.write(buf.array());
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("usage: java BinaryMST textMstFile binaryMstFile");
+			return;
+		}
+		try {
+			convert(args[0], args[1]);
+		} catch (IOException e) {
+			System.out.println(e.toString());
+		}
+	}
+}
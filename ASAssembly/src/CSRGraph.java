@@ -0,0 +1,162 @@
+import com.mhhe.clrs2e.Vertex;
+import com.mhhe.clrs2e.WeightedAdjacencyListGraph;
+import com.mhhe.clrs2e.WeightedEdgeIterator;
+
+/*
+ * A weighted graph in compressed sparse row format. It replaces WeightedAdjacencyListGraph in the
+ * assembly, so walking the neighbours of a node does not create any object:
+ * 		for (int k=g.begin(u); k<g.end(u); k++) {
+ * 			int v = g.target(k);
+ * 			...
+ * 		}
+ * The neighbours of node u are targets[offsets[u]] to targets[offsets[u+1]-1], and weights[k] is the
+ * weight of the edge to targets[k].
+ *
+ * The neighbours of every node are in the same order as the edge iterator of WeightedAdjacencyListGraph
+ * (the last added edge is the first one), so the results do not change when one graph is replaced by the other.
+ * The graph can not be changed after it is created.
+ */
+public class CSRGraph {
+	int nOfNodes;
+	boolean directed;
+	int[] offsets;
+	int[] targets;
+	double[] weights;
+
+	/*
+	 * create a graph from a list of edges, edge j is from us[j] to vs[j] with the weight ws[j].
+	 * If the graph is undirected, every edge is put into the lists of both nodes.
+	 * @param numEdges number of edges in the list.
+	 */
+	public CSRGraph(int n, boolean d, int[] us, int[] vs, double[] ws, int numEdges) {
+		nOfNodes = n;
+		directed = d;
+		offsets = new int[n + 1];
+		for (int j=0; j<numEdges; j++) {
+			offsets[us[j] + 1]++;
+			if (!directed) {
+				offsets[vs[j] + 1]++;
+			}
+		}
+		for (int i=0; i<n; i++) {
+			offsets[i+1] += offsets[i];
+		}
+		targets = new int[offsets[n]];
+		weights = new double[offsets[n]];
+
+		//fill the list of every node from the end, so the last added edge is the first one.
+		int[] next = new int[n];
+		System.arraycopy(offsets, 1, next, 0, n);
+		for (int j=0; j<numEdges; j++) {
+			int k = --next[us[j]];
+			targets[k] = vs[j];
+			weights[k] = ws[j];
+			if (!directed) {
+				k = --next[vs[j]];
+				targets[k] = us[j];
+				weights[k] = ws[j];
+			}
+		}
+	}
+
+	private CSRGraph(int n, boolean d, int[] o, int[] t, double[] w) {
+		nOfNodes = n;
+		directed = d;
+		offsets = o;
+		targets = t;
+		weights = w;
+	}
+
+	/*
+	 * convert a WeightedAdjacencyListGraph, the order of the neighbours is kept.
+	 */
+	public static CSRGraph fromAdjacencyList(WeightedAdjacencyListGraph g) {
+		int n = g.getCardV();
+		int[] o = new int[n + 1];
+		for (int u=0; u<n; u++) {
+			WeightedEdgeIterator ite = (WeightedEdgeIterator) g.edgeIterator(u);
+			int num = 0;
+			while (ite.hasNext()) {
+				ite.next();
+				num++;
+			}
+			o[u+1] = o[u] + num;
+		}
+		int[] t = new int[o[n]];
+		double[] w = new double[o[n]];
+		for (int u=0; u<n; u++) {
+			WeightedEdgeIterator ite = (WeightedEdgeIterator) g.edgeIterator(u);
+			int k = o[u];
+			while (ite.hasNext()) {
+				Vertex v = (Vertex) ite.next();
+				t[k] = v.getIndex();
+				w[k] = ite.getWeight();
+				k++;
+			}
+		}
+		return new CSRGraph(n, g.isDirected(), o, t, w);
+	}
+
+	/*
+	 * convert to a WeightedAdjacencyListGraph. The order of the neighbours is kept if the graph is directed;
+	 * if not, every edge is added once from the node with the smaller index, so the order may be different.
+	 */
+	public WeightedAdjacencyListGraph toAdjacencyList() {
+		WeightedAdjacencyListGraph g = new WeightedAdjacencyListGraph(nOfNodes, directed);
+		for (int i=0; i<nOfNodes; i++) {
+			g.addVertex(i, Integer.toString(i));
+		}
+		for (int u=0; u<nOfNodes; u++) {
+			for (int k=end(u)-1; k>=begin(u); k--) {	//the last added edge is the first one in the list
+				if (directed || (u <= targets[k])) {
+					g.addEdge(u, targets[k], weights[k]);
+				}
+			}
+		}
+		return g;
+	}
+
+	public int getCardV() {
+		return nOfNodes;
+	}
+
+	/*
+	 * number of edges in the lists, an undirected edge is counted twice.
+	 */
+	public int getCardE() {
+		return targets.length;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/*
+	 * index of the first edge of node u.
+	 */
+	public int begin(int u) {
+		return offsets[u];
+	}
+
+	/*
+	 * index after the last edge of node u.
+	 */
+	public int end(int u) {
+		return offsets[u+1];
+	}
+
+	public int degree(int u) {
+		return offsets[u+1] - offsets[u];
+	}
+
+	/*
+	 * the node which edge k goes to.
+	 */
+	public int target(int k) {
+		return targets[k];
+	}
+
+	public double weight(int k) {
+		return weights[k];
+	}
+}
@@ -1,17 +1,68 @@
 // store all the calculated overlap distance
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+/*
+ * The distances are kept in open-addressing hash tables with linear probing. The key of two nodes is
+ * ((long)min << 32) | max, and the overlap length and distance are stored in the order (min, max), so
+ * the distance of (i2, i1) is found from the one of (i1, i2). No object is created for any pair.
+ *
+ * It can be used by several threads at the same time. The keys are spread over NUM_STRIPES tables by
+ * their hash values, and each table is locked by itself. "searchOrCalculate" calculates the distance
+ * of a pair only once: if another thread is calculating the same pair, it waits for that result.
+ *
+ * A distance may also be calculated with a bound (see getOVLDistance in OvlDistance.java), then the result
+ * is null if the distance must be bigger than the bound. Such a pair is kept in the table as pruned with the
+ * bound, so a later search with the same or a smaller bound gets null without any calculation. Only the
+ * complete distances are returned by "searchDistance".
+ */
 public class CalculatedOvlDistance {
-	TreeSet<Dist> distances;
-	
+	private static final long EMPTY = -1;	//keys are never negative because the indices of nodes are not
+	private static final int INIT_CAPACITY = 1 << 6;
+	private static final int STRIPE_BITS = 6;
+	private static final int NUM_STRIPES = 1 << STRIPE_BITS;
+
+	/*
+	 * calculate the overlap distance of two nodes, the return value is the same as "getOVLDistance"
+	 * in OvlDistance.java.
+	 * @param maxDis -1 if the distance is always needed, or else null may be returned if the distance 
+	 * 		must be bigger than maxDis. 
+	 */
+	public interface Calculator {
+		int[] calculate(int i1, int i2, int maxDis);
+	}
+
+	Stripe[] stripes;
+
 	public CalculatedOvlDistance() {
-		distances = new TreeSet<Dist> ();
+		stripes = new Stripe[NUM_STRIPES];
+		for (int i=0; i<NUM_STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
 	}
-	
+
+	/*
+	 * store the distance between i1 and i2. Nothing is changed if the distance has been stored.
+	 */
 	public void addDistance(int i1, int i2, int ovlDis, int ovlLen) {
-		distances.add(new Dist(i1, i2, ovlDis, ovlLen));
+		if (i1 > i2) {	//store in the order (min, max)
+			int tmp = i1;
+			i1 = i2;
+			i2 = tmp;
+			ovlDis = (-1) * ovlDis;
+			ovlLen = (-1) * ovlLen;
+		}
+		long key = makeKey(i1, i2);
+		int h = hash(key);
+		Stripe st = stripes[h >>> (32 - STRIPE_BITS)];
+		synchronized (st) {
+			st.put(key, h, ovlLen, ovlDis);
+		}
 	}
-	
+
 	/*
 	 * search in distances to find if there is information between i1 and i2.
 	 * If does, return int[2] which is same as the return from "getOVLDistance" in OvlDistance.java.
@@ -20,21 +71,297 @@ public class CalculatedOvlDistance {
 	 */
 	public int[] searchDistance(int i1, int i2) {
 		int[] ret = new int[2];
-		
-		if (distances.contains(new Dist(i1, i2, 0 ,0))) {
-			Dist tmp = (Dist) distances.tailSet(new Dist(i1, i2, 0, 0), true).first();
-			ret[0] = tmp.ovlLen;
-			ret[1] = tmp.ovlDis;
-		} else if (distances.contains(new Dist(i2, i1, 0, 0))) {
-			Dist tmp = (Dist) distances.tailSet(new Dist(i2, i1, 0, 0), true).first();
-			ret[0] = (-1) * tmp.ovlLen;
-			ret[1] = (-1) * tmp.ovlDis;
-		} else {
+		if (!searchDistance(i1, i2, ret)) {
 			ret = null;
 		}
 		return ret;
 	}
-	
+
+	/*
+	 * same as above, but the result is put into "ret" and nothing is allocated.
+	 * @return true if the distance is found.
+	 */
+	public boolean searchDistance(int i1, int i2, int[] ret) {
+		long key = makeKey(Math.min(i1, i2), Math.max(i1, i2));
+		int h = hash(key);
+		Stripe st = stripes[h >>> (32 - STRIPE_BITS)];
+		synchronized (st) {
+			return st.get(key, h, (i1 <= i2), ret);
+		}
+	}
+
+	/*
+	 * Get the distance between i1 and i2. If it has not been stored, calculate it by c.calculate(i1, i2)
+	 * and store it. If two threads need the same pair at the same time, only one of them calculates it
+	 * and the other one waits for the result.
+	 * @param ret the result is put into it, int[0] - overlap length; int[1] - overlap distance.
+	 * @return ret
+	 */
+	public int[] searchOrCalculate(int i1, int i2, int[] ret, Calculator c) {
+		return searchOrCalculate(i1, i2, ret, c, -1);
+	}
+
+	/*
+	 * Same as above, but the distance is only needed if it is not bigger than maxDis, and c.calculate is
+	 * called with maxDis. If another thread is calculating the pair with a bound which is not smaller 
+	 * (or without a bound), its result is used; if its bound is smaller, this thread waits for it and then
+	 * calculates the pair itself. So a pair is never calculated by two threads at the same time.
+	 * @param maxDis -1 means the distance is always needed.
+	 * @return ret, or null if the distance must be bigger than maxDis.
+	 */
+	public int[] searchOrCalculate(final int i1, final int i2, int[] ret, final Calculator c, final int maxDis) {
+		long key = makeKey(Math.min(i1, i2), Math.max(i1, i2));
+		int h = hash(key);
+		Stripe st = stripes[h >>> (32 - STRIPE_BITS)];
+		int[] dis = null;
+		while (true) {
+			Pending task;
+			boolean owner = false;
+			synchronized (st) {
+				if (st.get(key, h, (i1 <= i2), ret)) {
+					return ret;
+				}
+				if ((maxDis >= 0) && (st.getPrunedBound(key, h) >= maxDis)) {
+					return null;
+				}
+				task = st.pending.get(key);
+				if (task == null) {
+					task = new Pending(new Callable<int[]>() {
+						public int[] call() {
+							int[] dis = c.calculate(i1, i2, maxDis);
+							if (dis == null) {
+								return null;
+							} else if (i1 <= i2) {	//the result in the order (min, max)
+								return new int[] {dis[0], dis[1]};
+							} else {
+								return new int[] {(-1) * dis[0], (-1) * dis[1]};
+							}
+						}
+					}, maxDis);
+					st.pending.put(key, task);
+					owner = true;
+				}
+			}
+
+			boolean done = false;
+			try {
+				if (owner) {
+					task.run();
+				}
+				dis = task.get();
+				done = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				if (owner) {
+					synchronized (st) {
+						if (dis != null) {
+							st.put(key, h, dis[0], dis[1]);
+						} else if (done) {
+							st.putPruned(key, h, maxDis);
+						}
+						st.pending.remove(key);
+					}
+				}
+			}
+			if (dis != null) {
+				break;
+			}
+			//the distance is bigger than the bound of the task. It is also bigger than maxDis if maxDis is 
+			//	not bigger, or else calculate it again with maxDis.
+			if ((maxDis >= 0) && (maxDis <= task.maxDis)) {
+				return null;
+			}
+		}
+
+		if (i1 <= i2) {
+			ret[0] = dis[0];
+			ret[1] = dis[1];
+		} else {
+			ret[0] = (-1) * dis[0];
+			ret[1] = (-1) * dis[1];
+		}
+		return ret;
+	}
+
+	/*
+	 * get the number of the complete distances.
+	 */
+	public int getSize() {
+		int size = 0;
+		for (int i=0; i<NUM_STRIPES; i++) {
+			synchronized (stripes[i]) {
+				size += stripes[i].numDistances;
+			}
+		}
+		return size;
+	}
+
+	private static long makeKey(int min, int max) {
+		return (((long) min) << 32) | (max & 0xffffffffL);
+	}
+
+	/*
+	 * the finalizer of MurmurHash3, so the nearby pairs are spread over the tables.
+	 * The high bits select the stripe and the low bits select the slot in it.
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/*
+	 * a calculation of a pair which is running, with the bound it is calculated with.
+	 */
+	static class Pending extends FutureTask<int[]> {
+		int maxDis;
+
+		Pending(Callable<int[]> c, int m) {
+			super(c);
+			maxDis = m;
+		}
+	}
+
+	/*
+	 * One of the hash tables. All the methods must be called while holding the lock of the stripe.
+	 */
+	static class Stripe {
+		long[] keys;
+		int[] ovlLens;
+		int[] ovlDists;	//the distance, or the bound if the pair is pruned
+		boolean[] pruned;	//true if only the bound of the distance is known
+		int size;
+		int numDistances;	//number of the keys which are not pruned
+		int mask;	//capacity - 1, the capacity is always a power of two
+		HashMap<Long, Pending> pending;	//the pairs which are being calculated
+
+		Stripe() {
+			init(INIT_CAPACITY);
+			numDistances = 0;
+			pending = new HashMap<Long, Pending> ();
+		}
+
+		private void init(int capacity) {
+			keys = new long[capacity];
+			Arrays.fill(keys, EMPTY);
+			ovlLens = new int[capacity];
+			ovlDists = new int[capacity];
+			pruned = new boolean[capacity];
+			size = 0;
+			mask = capacity - 1;
+		}
+
+		/*
+		 * @param inOrder false if the result should be for (max, min), then the signs are changed.
+		 */
+		boolean get(long key, int h, boolean inOrder, int[] ret) {
+			int slot = findSlot(key, h);
+			if ((keys[slot] == EMPTY) || pruned[slot]) {
+				return false;
+			}
+			if (inOrder) {
+				ret[0] = ovlLens[slot];
+				ret[1] = ovlDists[slot];
+			} else {
+				ret[0] = (-1) * ovlLens[slot];
+				ret[1] = (-1) * ovlDists[slot];
+			}
+			return true;
+		}
+
+		/*
+		 * @return the biggest bound the pair is pruned with, -1 if it is not pruned.
+		 */
+		int getPrunedBound(long key, int h) {
+			int slot = findSlot(key, h);
+			if ((keys[slot] == EMPTY) || !pruned[slot]) {
+				return -1;
+			}
+			return ovlDists[slot];
+		}
+
+		/*
+		 * put a complete distance, it replaces the bound if the pair is pruned.
+		 */
+		void put(long key, int h, int ovlLen, int ovlDis) {
+			int slot = findSlot(key, h);
+			if ((keys[slot] == key) && !pruned[slot]) {
+				return;
+			}
+			boolean isNew = (keys[slot] != key);
+			keys[slot] = key;
+			ovlLens[slot] = ovlLen;
+			ovlDists[slot] = ovlDis;
+			pruned[slot] = false;
+			numDistances++;
+			if (isNew) {
+				added();
+			}
+		}
+
+		/*
+		 * the distance of the pair is bigger than maxDis. Nothing is changed if the distance is known.
+		 */
+		void putPruned(long key, int h, int maxDis) {
+			int slot = findSlot(key, h);
+			if (keys[slot] == key) {
+				if (pruned[slot]) {
+					ovlDists[slot] = Math.max(ovlDists[slot], maxDis);
+				}
+				return;
+			}
+			keys[slot] = key;
+			ovlLens[slot] = 0;
+			ovlDists[slot] = maxDis;
+			pruned[slot] = true;
+			added();
+		}
+
+		private void added() {
+			size++;
+			if (size * 2 > keys.length) {	//keep the load factor under 0.5
+				rehash(keys.length * 2);
+			}
+		}
+
+		/*
+		 * find the slot of the key, or the empty slot where it should be put.
+		 */
+		private int findSlot(long key, int h) {
+			int slot = h & mask;
+			while ((keys[slot] != EMPTY) && (keys[slot] != key)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void rehash(int capacity) {
+			long[] oldKeys = keys;
+			int[] oldLens = ovlLens;
+			int[] oldDists = ovlDists;
+			boolean[] oldPruned = pruned;
+			int oldSize = size;
+			init(capacity);
+			for (int i=0; i<oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					int slot = findSlot(oldKeys[i], hash(oldKeys[i]));
+					keys[slot] = oldKeys[i];
+					ovlLens[slot] = oldLens[i];
+					ovlDists[slot] = oldDists[i];
+					pruned[slot] = oldPruned[i];
+				}
+			}
+			size = oldSize;
+		}
+	}
+
 	public static void main(String args[]) {
 		CalculatedOvlDistance in = new CalculatedOvlDistance();
 		in.addDistance(1048575, 1048574, 11, 20);
@@ -42,42 +369,14 @@ public class CalculatedOvlDistance {
 		in.addDistance(1048575, 1048572, 13, 20);
 		in.addDistance(1048575, 5, -14, -20);
 		in.addDistance(1, 6, 15, 20);
-		
+
 		int[] ret = in.searchDistance(1048575, 1048578);
 		if (ret != null) {
 			System.out.println(ret[0] + " " + ret[1]);
 		} else {
 			System.out.println("Not found!");
 		}
-		
-	}
-
 
-
-	class Dist implements Comparable<Dist>{
-		long indexOfNodes;
-		int ovlDis;
-		int ovlLen;
-		
-		Dist(int idx1, int idx2, int dis, int len) {
-			indexOfNodes = (idx1 << 20) + idx2;
-			ovlDis = dis;
-			ovlLen = len;
-		}
-		
-		public int compareTo(Dist other) {
-			//Returns 0 if the argument is equal to this; 			
-			//a value less than 0 if the argument is greater than this; 
-			//and a value greater than 0 if the argument is less than this. 
-			if (this.indexOfNodes == other.indexOfNodes) {
-				return 0;
-			} else if (this.indexOfNodes > other.indexOfNodes) {
-				return 1;
-			} else {
-				return -1;
-			}
-		}
 	}
 
 }
-
@@ -29,6 +29,8 @@ public class D2 {
 	protected int uv_skip;
 	protected int t;
 	protected int tv_max;
+	protected KmerIndex kmerIndex;	//word counts of all the nodes for the heuristics, null if it is not created.
+	private ThreadLocal<D2Workspace> workspace;	//buffers of matchEndWindows, one for each thread.
 
 
 	public D2(Properties props) {
@@ -49,6 +51,12 @@ public class D2 {
 		uv_skip = Integer.parseInt(props.getProperty("uv_skip"));
 		t = Integer.parseInt(props.getProperty("t"));
 		tv_max = Integer.parseInt(props.getProperty("tv_max"));
+		kmerIndex = null;
+		workspace = new ThreadLocal<D2Workspace>() {
+			protected D2Workspace initialValue() {
+				return new D2Workspace(tv_max, d2NumWords);
+			}
+		};
 	}
 
 	public int getWindowSize() {
@@ -63,7 +71,7 @@ public class D2 {
 		return heuristicWordSize;
 	}
 
-	private int encodeBase(char c) {
+	static int encodeBase(char c) {
 		switch (c) {
 		case 'A' :
 		case 'a' : return 0;
@@ -79,7 +87,7 @@ public class D2 {
 		return -2;
 	}
 
-	private int[] createWindowHash(String s, int leftCoord, int windowSize, int wordSize, int wordFilter, int numWords) {
+	private int[] createWindowHash(CharSequence s, int leftCoord, int windowSize, int wordSize, int wordFilter, int numWords) {
 		int[] H = new int[numWords];
 
 		int currentWordCode = 0;
@@ -103,7 +111,7 @@ public class D2 {
 
 
 	// Returns the word starting at base leftCoord o
-	private int encodeWord(String s, int leftCoord, int wordSize, int wordFilter) {
+	private int encodeWord(CharSequence s, int leftCoord, int wordSize, int wordFilter) {
 		int code = 0;
 		for (int i=0; i < wordSize; i++) {
 			int c = encodeBase(s.charAt(i + leftCoord));
@@ -115,40 +123,151 @@ public class D2 {
 		return code;
 	}
 
-	public BestWindowMatches matchEndWindows(String s1, String s2) {
-		if (!uv_tv_Heuristic(s1, s2))
-			return new BestWindowMatches(new int[1], 0, 0, new int [1], 0, 0);
+	/*
+	 * Encode the sequence and generate its D2Profile. It is called once for each node when the node
+	 * is added to the graph.
+	 * @param id index of the node in the graph, -1 if the sequence is not a node.
+	 */
+	public D2Profile createProfile(CharSequence s, int id) {
+		return new D2Profile(id, s, windowSize, d2WordSize);
+	}
 
-		//System.out.println("HERE");
+	public D2Profile createProfile(CharSequence s) {
+		return createProfile(s, -1);
+	}
+
+	/*
+	 * Set the k-mer index of all the nodes in the graph. After it is set, the u/v and t/v heuristics
+	 * get the word counts of a node from the index instead of hashing the node again.
+	 */
+	public void setKmerIndex(KmerIndex index) {
+		kmerIndex = index;
+	}
 
-		int[] H1_left = createWindowHash(s1, 0, windowSize, d2WordSize, d2WordFilter, d2NumWords);
-		int[] H1_right = createWindowHash(s1, s1.length() - windowSize, windowSize, d2WordSize, d2WordFilter, d2NumWords);
-		int[] H2 = createWindowHash(s2, 0, windowSize, d2WordSize, d2WordFilter, d2NumWords);
+	/*
+	 * get the workspace of the current thread.
+	 */
+	public D2Workspace getWorkspace() {
+		return workspace.get();
+	}
 
-		int d2_left = 0;
-		int d2_right = 0;
-		for (int i=0; i < d2NumWords; i++) {
-			if (H1_left[i] != H2[i]) {
-				d2_left += Math.pow(H1_left[i] - H2[i], 2);
+	/*
+	 * Count the d2 words which are shared by two substrings with the same length, s1[start1, start1+len) 
+	 * and s2[start2, start2+len). A word which appears a times in one and b times in the other one is
+	 * counted min(a, b) times. The words with N are not counted.
+	 * @return the number of shared words, -1 if both substrings have a word with N.
+	 */
+	public int countSharedWords(D2Profile p1, int start1, D2Profile p2, int start2, int len) {
+		int numWords = len - d2WordSize + 1;
+		if (numWords <= 0) {
+			return 0;
+		}
+		int[] hist = getWorkspace().wordHist;
+		boolean n1 = false;
+		boolean n2 = false;
+		for (int i=start2; i<start2+numWords; i++) {
+			int code = p2.getWord(i);
+			if (code >= 0) {
+				hist[code]++;
+			} else {
+				n2 = true;
+			}
+		}
+		int ret = 0;
+		for (int i=start1; i<start1+numWords; i++) {
+			int code = p1.getWord(i);
+			if (code >= 0) {
+				if (hist[code] > 0) {
+					hist[code]--;
+					ret++;
+				}
+			} else {
+				n1 = true;
 			}
-			if (H1_right[i] != H2[i]) {
-				d2_right += Math.pow(H1_right[i] - H2[i], 2);
+		}
+		for (int i=start2; i<start2+numWords; i++) {	//clear the histogram
+			int code = p2.getWord(i);
+			if (code >= 0) {
+				hist[code] = 0;
 			}
 		}
+		return (n1 && n2) ? -1 : ret;
+	}
+
+	/*
+	 * The returned object has its own arrays, it is not changed by later calls.
+	 */
+	public BestWindowMatches matchEndWindows(String s1, String s2) {
+		BestWindowMatches b = matchEndWindows(createProfile(s1), createProfile(s2));
+		return new BestWindowMatches(b.bestLeftStart, b.numBestLeftWindows, b.bestLeftD2, 
+				b.bestRightStart, b.numBestRightWindows, b.bestRightD2);
+	}
+
+	/*
+	 * Use the workspace of the current thread. The returned object belongs to the workspace, so it is
+	 * only valid until the next call in the same thread.
+	 */
+	public BestWindowMatches matchEndWindows(D2Profile p1, D2Profile p2) {
+		return matchEndWindows(p1, p2, workspace.get());
+	}
+
+	/*
+	 * Find the windows in p2 which have the smallest d2 distance to the first and the last window of p1.
+	 * The histograms of p1's windows and the word codes of p2 are taken from the profiles, so only the
+	 * slide over p2 is done here.
+	 * 
+	 * The histograms are indexed by word code and are all zero between two calls: H1_left and H1_right are
+	 * set from the sparse histograms of p1 and cleared from them again, and H2 is cleared from the words
+	 * of the last window of s2. So nothing of the size 4^d2WordSize is cleared for a pair, and the initial 
+	 * d2 costs O(windowSize).
+	 * 
+	 * All the buffers are taken from ws and the result is put into ws.best, nothing is allocated here.
+	 * The arrays in the result may be longer than the number of best windows.
+	 */
+	public BestWindowMatches matchEndWindows(D2Profile p1, D2Profile p2, D2Workspace ws) {
+		CharSequence s1 = p1.seq;
+		CharSequence s2 = p2.seq;
+		BestWindowMatches best = ws.best;
+		if (!uv_tv_Heuristic(s1, p2, ws.getTvArr())) {
+			best.set(ws.bestLeftWindow, 0, 0, ws.bestRightWindow, 0, 0);
+			return best;
+		}
 
-		int[] bestLeftWindow = new int[s2.length() - windowSize + 1];
+		//System.out.println("HERE");
+
+		ws.prepare(s2.length() - windowSize + 1);
+		int[] H1_left = ws.H1_left;	//indexed by word code
+		int[] H1_right = ws.H1_right;
+		int[] H2 = ws.H2;
+		setHistogram(H1_left, p1.leftWords, p1.leftCounts);
+		setHistogram(H1_right, p1.rightWords, p1.rightCounts);
+
+		// d2 = sum((H1-H2)^2). Start from an empty window of s2, that is sum(H1^2), then add words one by one.
+		int d2_left = p1.leftSumSq;
+		int d2_right = p1.rightSumSq;
+		int numWindowWords = windowSize - d2WordSize + 1;
+		for (int i=0; i < numWindowWords; i++) {
+			int id = p2.getWord(i);
+			if (id >= 0) {
+				d2_left += ((H2[id] - H1_left[id]) << 1) + 1;
+				d2_right += ((H2[id] - H1_right[id]) << 1) + 1;
+				H2[id]++;
+			}
+		}
+
+		int[] bestLeftWindow = ws.bestLeftWindow;
 		bestLeftWindow[0] = 0;
 		int numBestLeft = 1;
 		int bestLeftScore = d2_left;
 
-		int[] bestRightWindow = new int[s2.length() - windowSize + 1];
+		int[] bestRightWindow = ws.bestRightWindow;
 		bestRightWindow[0] = 0;
 		int numBestRight = 1;
 		int bestRightScore = d2_right;
 
 		for (int i=0; i < s2.length() - windowSize; i++) {
-			int firstWord = encodeWord(s2, i, d2WordSize, d2WordFilter);
-			int lastWord = encodeWord(s2, i + windowSize - d2WordSize + 1, d2WordSize, d2WordFilter);
+			int firstWord = p2.getWord(i);
+			int lastWord = p2.getWord(i + numWindowWords);
 
 			if (firstWord != lastWord) {
 				if (firstWord >= 0 && lastWord >= 0) {
@@ -162,14 +281,15 @@ public class D2 {
 					H2[lastWord]++;		   
 				}
 				else {
+					// (H1-(H2-1))^2 - (H1-H2)^2 = 2*(H1-H2)+1, (H1-(H2+1))^2 - (H1-H2)^2 = 2*(H2-H1)+1
 					if (firstWord >= 0) {
-						d2_left = (int) (d2_left - Math.pow(H1_left[firstWord] - H2[firstWord], 2) + Math.pow(H1_left[firstWord] - (H2[firstWord]-1), 2));
-						d2_right = (int) (d2_right - Math.pow(H1_right[firstWord] - H2[firstWord], 2) + Math.pow(H1_right[firstWord] - (H2[firstWord]-1), 2));
+						d2_left += ((H1_left[firstWord] - H2[firstWord]) << 1) + 1;
+						d2_right += ((H1_right[firstWord] - H2[firstWord]) << 1) + 1;
 						H2[firstWord]--;
 					}
 					if (lastWord >= 0) {
-						d2_left = (int) (d2_left - Math.pow(H1_left[lastWord] - H2[lastWord], 2) + Math.pow(H1_left[lastWord] - (H2[lastWord]+1), 2));
-						d2_right = (int) (d2_right - Math.pow(H1_right[lastWord] - H2[lastWord], 2) + Math.pow(H1_right[lastWord] - (H2[lastWord]+1), 2));
+						d2_left += ((H2[lastWord] - H1_left[lastWord]) << 1) + 1;
+						d2_right += ((H2[lastWord] - H1_right[lastWord]) << 1) + 1;
 						H2[lastWord]++;
 					}
 				}
@@ -194,30 +314,60 @@ public class D2 {
 			}
 		}
 
+		//clear the histograms. H2 only has the words of the last window of s2.
+		clearHistogram(H1_left, p1.leftWords);
+		clearHistogram(H1_right, p1.rightWords);
+		int lastWindow = Math.max(s2.length() - windowSize, 0);
+		for (int i=lastWindow; i < lastWindow + numWindowWords; i++) {
+			int id = p2.getWord(i);
+			if (id >= 0) {
+				H2[id] = 0;
+			}
+		}
+
 		if (bestLeftScore > THRESHOLD) {
-			bestLeftWindow = null;
 			numBestLeft = 0;
 			bestLeftScore = INT_MAX;
 		}
 		if (d2_right > THRESHOLD) {
-			bestRightWindow = null;
 			numBestRight = 0;
 			bestRightScore = INT_MAX;
 		}
-		return new BestWindowMatches(bestLeftWindow, numBestLeft, bestLeftScore, bestRightWindow, numBestRight, bestRightScore);
+		best.set(bestLeftWindow, numBestLeft, bestLeftScore, bestRightWindow, numBestRight, bestRightScore);
+		return best;
 	}
 
-	private boolean uv_tv_Heuristic(String s1, String s2) {
+	private static void setHistogram(int[] H, int[] words, char[] counts) {
+		for (int i=0; i<words.length; i++) {
+			H[words[i]] = counts[i];
+		}
+	}
+
+	private static void clearHistogram(int[] H, int[] words) {
+		for (int i=0; i<words.length; i++) {
+			H[words[i]] = 0;
+		}
+	}
+
+	/*
+	 * If p2 is a node in the k-mer index, the number of instances of a word on s2 is looked up in the index;
+	 * if not, s2 is hashed here.
+	 */
+	private boolean uv_tv_Heuristic(CharSequence s1, D2Profile p2, int[] arr) {
 
 		// The u/v heuristic
 		// Look at every (uv_skip) word on s1 and count the number of instances on s2.
 		// Return false if the value is less than u.
-		int[] H = createWindowHash(s2, 0, s2.length(), heuristicWordSize, heuristicWordFilter, heuristicNumWords);
+		int[] H = null;
+		if ((kmerIndex == null) || (p2.id < 0)) {
+			H = createWindowHash(p2.seq, 0, p2.seq.length(), heuristicWordSize, heuristicWordFilter, heuristicNumWords);
+		}
+		int id2 = p2.id;
 		int total = 0;
 		for (int i=0; total < u && i <= s1.length() - heuristicWordSize; i += uv_skip) {
 			int code = encodeWord(s1, i, heuristicWordSize, heuristicWordFilter);
 			if (code >= 0) {
-				total += H[code];
+				total += getCount(H, id2, code);
 			}
 		}
 		if (total < u)
@@ -225,7 +375,7 @@ public class D2 {
 
 		// the t/v heursitc
 		// Must find at least t words on s2 that occur within 100 bases of eachother on s1.
-		int[] arr = new int[tv_max];   // Assuming this gets initilized automatically
+		// arr is a cleared ring buffer with the size of tv_max
 		int current_position = 0;
 		int current_code = encodeWord(s1, 0, heuristicWordSize, heuristicWordFilter);
 		while (current_code < 0 && current_position <=  s1.length() - heuristicWordSize) {
@@ -233,7 +383,7 @@ public class D2 {
 			current_code = encodeWord(s1, current_position, heuristicWordSize, heuristicWordFilter);  // Shift over past the N
 		}
 		if (current_code >= 0) {
-			total = H[current_code];
+			total = getCount(H, id2, current_code);
 			arr[current_position % tv_max] = total;
 		}
 		else
@@ -260,7 +410,7 @@ public class D2 {
 			}
 
 			int current_index = current_position % tv_max;
-			int score = current_code >= 0 ? H[current_code] : 0;
+			int score = current_code >= 0 ? getCount(H, id2, current_code) : 0;
 			total = total - arr[current_index] + score;
 			arr[current_index] = score;	    
 			//System.out.println(current_position + " " + total);
@@ -268,6 +418,17 @@ public class D2 {
 		return false;
 	}
 
+	/*
+	 * number of instances of the word on s2, from the histogram H of s2 if it is not null, or else from the k-mer index.
+	 */
+	private int getCount(int[] H, int id2, int code) {
+		if (H != null) {
+			return H[code];
+		} else {
+			return kmerIndex.getCount(code, id2);
+		}
+	}
+
 
 
 	public static void main(String args[]) {
@@ -314,29 +475,3 @@ public class D2 {
 	}
 
 }
-
-class BestWindowMatches {    
-	public int[] bestLeftStart;
-	public int numBestLeftWindows;
-	public int bestLeftD2;
-
-	public int[] bestRightStart;
-	public int numBestRightWindows;
-	public int bestRightD2;
-
-	public BestWindowMatches(int[] leftStart, int numBestLeft, int leftD2, int[] rightStart, int numBestRight, int rightD2) {
-		bestLeftStart = new int[numBestLeft];
-		for (int i=0; i < numBestLeft; i++)
-			bestLeftStart[i] = leftStart[i];
-		numBestLeftWindows = numBestLeft;
-		bestLeftD2 = leftD2;
-
-		bestRightStart = new int[numBestRight];
-		for (int i=0; i < numBestRight; i++)
-			bestRightStart[i] = rightStart[i];
-		numBestRightWindows = numBestRight;
-		bestRightD2 = rightD2;
-	}
-}
-
-
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/*
+ * Precomputed k-mer information of one EST which is used by D2.
+ * It is generated once by "createProfile" in D2.java when the node is added to the graph, so that
+ * "matchEndWindows" does not need to encode and hash the same sequence again for every compared pair.
+ *
+ * The profile is kept small, because there is one for every node:
+ * 		the d2 word codes are packed into a long array with 2*wordSize+1 bits for each word (the code plus 1,
+ * 			0 for a word with N), that is 13 bits for each base with the default word size 6;
+ * 		the histograms of the first and last window are sparse: only the words which occur in the window
+ * 			are stored, so each has at most windowSize-wordSize+1 entries.
+ */
+public class D2Profile {
+	int id;			//index of the node in the graph, -1 if the est is not a node of the graph.
+	CharSequence seq;	//the sequence of the est, a PackedSequence if the est is a node of the graph.
+	long[] words;	//the packed d2 word codes, see "getWord"
+	int numWords;	//number of d2 words in the est
+	int wordBits;	//number of bits of each word in "words"
+
+	//histograms of the first and last window. Only the words which appear in the window are stored,
+	//	sorted in ascending order. leftCounts[i] is the number of leftWords[i] in the first window.
+	int[] leftWords;
+	char[] leftCounts;
+	int leftSumSq;	//sum of the squares of leftCounts
+	int[] rightWords;
+	char[] rightCounts;
+	int rightSumSq;	//sum of the squares of rightCounts
+
+	public D2Profile(int idx, CharSequence s, int windowSize, int wordSize) {
+		id = idx;
+		seq = s;
+
+		int[] codes = encodeWords(wordSize);
+		numWords = codes.length;
+		wordBits = (wordSize << 1) + 1;
+		words = new long[(int) (((long) numWords * wordBits + 63) >>> 6)];
+		for (int i=0; i<numWords; i++) {
+			long bit = (long) i * wordBits;
+			int k = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			long v = codes[i] + 1;
+			words[k] |= v << shift;
+			if (shift + wordBits > 64) {
+				words[k+1] |= v >>> (64 - shift);
+			}
+		}
+
+		int numWindowWords = windowSize - wordSize + 1;	//number of words in a window
+		leftWords = new int[0];
+		leftCounts = new char[0];
+		rightWords = leftWords;
+		rightCounts = leftCounts;
+		if (s.length() >= windowSize) {
+			int[] tmp = new int[numWindowWords];
+			int n = sortedWindow(codes, 0, numWindowWords, tmp);
+			leftWords = distinct(tmp, n);
+			leftCounts = countWords(tmp, n, leftWords);
+			leftSumSq = sumOfSquares(leftCounts);
+			n = sortedWindow(codes, s.length() - windowSize, numWindowWords, tmp);
+			rightWords = distinct(tmp, n);
+			rightCounts = countWords(tmp, n, rightWords);
+			rightSumSq = sumOfSquares(rightCounts);
+		}
+	}
+
+	public int getLen() {
+		return seq.length();
+	}
+
+	public CharSequence getSeq() {
+		return seq;
+	}
+
+	/*
+	 * get the code of the d2 word starting at base i, -1 if the word includes N.
+	 */
+	int getWord(int i) {
+		if ((i < 0) || (i >= numWords)) {
+			throw new IndexOutOfBoundsException("word: " + i + ", number of words: " + numWords);
+		}
+		long bit = (long) i * wordBits;
+		int k = (int) (bit >>> 6);
+		int shift = (int) (bit & 63);
+		long v = words[k] >>> shift;
+		if (shift + wordBits > 64) {
+			v |= words[k+1] << (64 - shift);
+		}
+		return (int) (v & ((1L << wordBits) - 1)) - 1;
+	}
+
+	/*
+	 * Get the code of every word with the length of wordSize in the sequence. It is used to build the
+	 * profile and the k-mer index, so it is only called once for each node.
+	 * @return ret[i] is the code of the word starting at base i, -1 if the word includes N.
+	 */
+	int[] encodeWords(int wordSize) {
+		int len = seq.length();
+		PackedSequence packed = (seq instanceof PackedSequence) ? (PackedSequence) seq : null;
+		int wordFilter = (1 << (wordSize << 1)) - 1; // 2^(2*wordSize) - 1
+		int[] ret = new int[Math.max(len - wordSize + 1, 0)];
+		int currentWordCode = 0;
+		int currentWordSize = 0;
+		for (int i=0; i<len; i++) {
+			int c = (packed != null) ? packed.getCode(i) : D2.encodeBase(seq.charAt(i));
+			if (c < 0) {
+				currentWordCode = 0;
+				currentWordSize = 0;
+			}
+			else {
+				currentWordCode = ((currentWordCode << 2) | c) & wordFilter;
+				currentWordSize = Math.min(currentWordSize+1, wordSize);
+			}
+			if (i >= wordSize - 1) {	//the word starting at i-wordSize+1 ends here
+				ret[i - wordSize + 1] = (currentWordSize == wordSize) ? currentWordCode : -1;
+			}
+		}
+		return ret;
+	}
+
+	/*
+	 * put the words from codes[start] to codes[start+num-1] which do not include N into ret.
+	 * @return the number of the words in ret.
+	 */
+	private static int sortedWindow(int[] codes, int start, int num, int[] ret) {
+		int n = 0;
+		for (int i=start; i<start+num; i++) {
+			if (codes[i] >= 0) {
+				ret[n++] = codes[i];
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * count each of the different words in the first n elements of a, which are sorted by "distinct".
+	 */
+	private static char[] countWords(int[] a, int n, int[] diff) {
+		char[] ret = new char[diff.length];
+		int k = -1;
+		for (int i=0; i<n; i++) {
+			if ((i == 0) || (a[i] != a[i-1])) {
+				k++;
+			}
+			ret[k]++;
+		}
+		return ret;
+	}
+
+	/*
+	 * sort the first n elements of a and return the different values in ascending order.
+	 */
+	static int[] distinct(int[] a, int n) {
+		Arrays.sort(a, 0, n);
+		int numDiff = 0;
+		for (int i=0; i<n; i++) {
+			if ((i == 0) || (a[i] != a[i-1])) {
+				numDiff++;
+			}
+		}
+		int[] ret = new int[numDiff];
+		int k = 0;
+		for (int i=0; i<n; i++) {
+			if ((i == 0) || (a[i] != a[i-1])) {
+				ret[k++] = a[i];
+			}
+		}
+		return ret;
+	}
+
+	private static int sumOfSquares(char[] a) {
+		int ret = 0;
+		for (int i=0; i<a.length; i++) {
+			ret += a[i] * a[i];
+		}
+		return ret;
+	}
+}
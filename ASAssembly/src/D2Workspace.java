@@ -0,0 +1,49 @@
+import java.util.Arrays;
+
+/*
+ * Reusable buffers for "matchEndWindows" in D2.java.
+ * D2 keeps one workspace for each thread, so comparing two ests does not allocate any array. The buffers
+ * grow when a longer est is met, and the histograms are cleared (not reallocated) after every pair.
+ * The result is put into "best", which is overwritten by the next call of "matchEndWindows" in the same thread.
+ */
+public class D2Workspace {
+	int[] H1_left;	//counts of the words in the first window of s1, indexed by word code, all zero between two calls
+	int[] H1_right;	//counts of the words in the last window of s1
+	int[] H2;		//counts of the words in the current window of s2
+	int[] bestLeftWindow;
+	int[] bestRightWindow;
+	int[] tvArr;	//the ring buffer of the t/v heuristic
+	int[] wordHist;	//counts of words indexed by their codes for "countSharedWords", all zero between two calls
+	BestWindowMatches best;	//the result of the last call
+
+	public D2Workspace(int tvMax, int numWords) {
+		H1_left = new int[numWords];
+		H1_right = new int[numWords];
+		H2 = new int[numWords];
+		bestLeftWindow = new int[0];
+		bestRightWindow = new int[0];
+		tvArr = new int[tvMax];
+		wordHist = new int[numWords];
+		best = new BestWindowMatches();
+	}
+
+	/*
+	 * make sure the buffers of the best windows are big enough for s2.
+	 * @param numWindows number of windows in s2.
+	 */
+	void prepare(int numWindows) {
+		if (bestLeftWindow.length < numWindows) {
+			int len = Math.max(numWindows, bestLeftWindow.length * 2);
+			bestLeftWindow = new int[len];
+			bestRightWindow = new int[len];
+		}
+	}
+
+	/*
+	 * clear the ring buffer of the t/v heuristic.
+	 */
+	int[] getTvArr() {
+		Arrays.fill(tvArr, 0);
+		return tvArr;
+	}
+}
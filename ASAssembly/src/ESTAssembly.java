@@ -3,11 +3,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Properties;
 
-import com.mhhe.clrs2e.*;
-
 public class ESTAssembly {
 	protected final int INT_MAX = Integer.MAX_VALUE;
 	protected final int INT_MIN = Integer.MIN_VALUE;
@@ -53,69 +50,49 @@ public class ESTAssembly {
 	 * 						index of ending position. Index starts from 0.
 	 */
 	private void readEstFile(String inFileName) {
-		boolean bExists = false;
-		ArrayList<String> ests;	//store all the ests. 
-		ests = new ArrayList<String> ();
-		
 		try{ 
 			File f = (new File(inFileName));
-			bExists = f.exists();
-			if (!bExists) {
+			if (!f.exists()) {
 				System.out.println("File does not exist!");
 				return;
 			}
 
-			BufferedReader in = new BufferedReader(new FileReader(f));
-			String str = in.readLine();
-			while (str != null) {
-				str = str.trim();
-				// first line is comment line which begins from '>'
-				if (str.charAt(0) == '>') {	//comment line begins from '>'
-					String[] paras = str.split("_"); //remove ">" from it.
-					ests.add(paras[1]);
-					//ests.add("0"); //starting position
-					ests.add(str.substring(1)); //comment
-					
-					//get est in the next lines
-					str = in.readLine();
-					StringBuffer estStr = new StringBuffer();
-					while (str != null) {
-						str = str.trim();
-						if (str.compareTo("") != 0)	{
-							if (str.charAt(0) != '>') {
-								estStr.append(str.trim());
-							} else  {
-								ests.add(estStr.toString());
-								break;
-							}
-						}
-						str = in.readLine();
-					}
-					if (str == null) {
-						ests.add(estStr.toString());
-					}
-				} 
-			}
-			in.close();			
+			//the ests are parsed from the mapped file and put into the graph directly.
+			MappedEstFile in = new MappedEstFile(f);
+			in.load(g, Integer.parseInt(props.getProperty("NumOfLoaderThreads", 
+					Integer.toString(Runtime.getRuntime().availableProcessors()))));
 		}catch(IOException e){ 
 			System.out.println(e.toString());
 			return;
 		}
-		
-		//generate a graph from the input file
-		int i=0;
-		while (i<ests.size()) {
-			//the sequence is upper-case
-			g.addNode(new Node(ests.get(i), ests.get(i+1), ests.get(i+2).toUpperCase()));
-			i = i+3;
-		}
+		g.createKmerIndex();
 	}
 	
 	/*
-	 * read a minimum spanning tree from the input MST file
+	 * read a minimum spanning tree from the input MST file, which is a text file from PEACE or a binary
+	 * file converted by BinaryMST.java.
 	 */
 	private void readMST(String inFileName) {
 		int nOfNodes = g.graphNodes.size();
+
+		//a binary MST file generated by BinaryMST.java is mapped and loaded directly. The assembly can not
+		//	go on without the MST, so it stops here if the file can not be loaded.
+		try{ 
+			File f = (new File(inFileName));
+			if (f.exists() && BinaryMST.isBinary(f)) {
+				CSRGraph mst = BinaryMST.load(f, nOfNodes);
+				if (mst == null) {
+					System.out.println("The binary MST file " + inFileName + " can not be used!");
+					System.exit(1);
+				}
+				g.setMst(mst);
+				return;
+			}
+		}catch(IOException e){ 
+			System.out.println(e.toString());
+			System.exit(1);
+		}
+
 		int[][] nodes = new int[nOfNodes-1][3];	//store edges in MST, there are n-1 edges, n is number of nodes.
 
 		//read mst from the input file
@@ -154,16 +131,16 @@ public class ESTAssembly {
 		}
 		
 		// Make a undirected MST.
-		WeightedAdjacencyListGraph mst = 
-			new WeightedAdjacencyListGraph(nOfNodes, false);
-		for (int i=0; i<nOfNodes; i++) {	//i is the index of the node in graph
-			mst.addVertex(i, Integer.toString(i));
-		}
+		int[] us = new int[nodes.length];
+		int[] vs = new int[nodes.length];
+		double[] ws = new double[nodes.length];
 		for (int j=0; j<nodes.length; j++) {
-			mst.addEdge(nodes[j][0], nodes[j][1], nodes[j][2]);
+			us[j] = nodes[j][0];
+			vs[j] = nodes[j][1];
+			ws[j] = nodes[j][2];
 		}
 		
-		g.setMst(mst);
+		g.setMst(new CSRGraph(nOfNodes, false, us, vs, ws, nodes.length));
 	}
 
 	protected static Properties getProperties(String fName) throws IOException {
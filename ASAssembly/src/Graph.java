@@ -1,38 +1,80 @@
 import java.util.ArrayList;
 import java.util.Properties;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import com.mhhe.clrs2e.Vertex;
 import com.mhhe.clrs2e.WeightedAdjacencyListGraph;
-import com.mhhe.clrs2e.WeightedEdgeIterator;
 
 public class Graph {
 	protected final int INT_MAX = Integer.MAX_VALUE;
 	protected final int INT_MIN = Integer.MIN_VALUE;
 	private int numOfLevels;
+	private int numOfThreads;	//number of threads to compute the six-tuples, 1 means sequential.
+	private boolean candidatePruning;	//skip the alignments which can not give closer nodes than the found ones.
 
 	ArrayList<Node> graphNodes;
 	OvlDistance ovl;
-	CalculatedOvlDistance calDist;
-	WeightedAdjacencyListGraph mst;	//minimum spanning tree generated from peace
+	CalculatedOvlDistance calDist;	//all the calculated overlap distances, it can be used by several threads.
+	CalculatedOvlDistance.Calculator ovlCalculator;	//calculate the overlap distance of two nodes for calDist
+	CSRGraph mst;	//minimum spanning tree generated from peace
 	InclusionNodes inc;
+	SequenceStore seqStore;	//2-bit packed sequences of all the nodes
+	ThreadLocal<MSTFrontier> frontier;	//levels of the MST around the ends, one for each thread.
 	
 	public Graph(Properties p, InclusionNodes in) {
 		numOfLevels = Integer.parseInt(p.getProperty("NumOfLevels"));
+		if (numOfLevels == 0) { //keep checking until leaves
+			numOfLevels = INT_MAX;
+		}
+		numOfThreads = Integer.parseInt(p.getProperty("NumOfThreads", "1"));
+		candidatePruning = (Integer.parseInt(p.getProperty("CandidatePruning", "1")) == 1);
 		graphNodes = new ArrayList<Node> ();
 		ovl = new OvlDistance(p);
 		calDist = new CalculatedOvlDistance();
 		inc = in;
+		seqStore = new SequenceStore();
+		frontier = new ThreadLocal<MSTFrontier>();
+		ovlCalculator = new CalculatedOvlDistance.Calculator() {
+			public int[] calculate(int i1, int i2, int maxDis) {
+				return ovl.getOVLDistance(getProfileOfNode(i1), getProfileOfNode(i2), maxDis);
+			}
+		};
 	}
 	
-	public void setMst(WeightedAdjacencyListGraph m) {
+	public SequenceStore getSeqStore() {
+		return seqStore;
+	}
+	
+	public void setMst(CSRGraph m) {
 		mst = m;
 	}
 	
+	public void setMst(WeightedAdjacencyListGraph m) {
+		mst = CSRGraph.fromAdjacencyList(m);
+	}
+	
+	/*
+	 * add a node to the graph, pack its sequence into the sequence store and generate its D2 profile, so the est is only encoded once
+	 * no matter how many nodes it is compared with.
+	 */
 	public void addNode(Node s) {
+		s.pack(seqStore);
+		s.setProfile(ovl.d2.createProfile(s.getNodeStr(), graphNodes.size()));
 		graphNodes.add(s);
 	}
 	
+	/*
+	 * create the k-mer index of all the nodes for the D2 heuristics. It is called after all the 
+	 * nodes are added to the graph.
+	 */
+	public void createKmerIndex() {
+		ArrayList<D2Profile> profiles = new ArrayList<D2Profile> ();
+		for (int i=0; i<graphNodes.size(); i++) {
+			profiles.add(graphNodes.get(i).getProfile());
+		}
+		ovl.d2.setKmerIndex(new KmerIndex(profiles, ovl.d2.getHeuristicWordSize()));
+	}
+	
 	public void removeNode (int index) {
 		graphNodes.remove(index);
 	}
@@ -62,6 +104,13 @@ public class Graph {
 		return graphNodes.get(i).getSeq();
 	}
 	
+	/*
+	 * get D2 profile of the node with index i
+	 */
+	public D2Profile getProfileOfNode(int i) {
+		return graphNodes.get(i).getProfile();
+	}
+	
 	/*
 	 * get comment of the node with index i
 	 */
@@ -71,26 +120,27 @@ public class Graph {
 	
 
 
+	/*
+	 * Find the nodes which are included in one of their neighbours in the MST and put them into inc,
+	 * a node is included in the first such neighbour. Return the SixTuples of the other nodes.
+	 */
 	private ArrayList<SixTuple> handleInclusion() {
+		if (numOfThreads > 1) {
+			return handleInclusionParallel();
+		}
 		ArrayList<SixTuple> nodes = new ArrayList<SixTuple>();
 		int nOfNodes = mst.getCardV();
+		int[] ovlBuf = new int[2];	//the distance found in calDist
 		
 		for (int i=0; i<nOfNodes; i++) {
-			WeightedEdgeIterator ite = (WeightedEdgeIterator) mst.edgeIterator(i);
 			boolean flag = true;
-			while (ite.hasNext()) {
-				Vertex v = (Vertex) ite.next();
-				int index = v.getIndex();
+			for (int k=mst.begin(i); k<mst.end(i); k++) {
+				int index = mst.target(k);
 				
-				String curSeq = graphNodes.get(i).getNodeStr();
-				String comSeq = graphNodes.get(index).getNodeStr();
-
-				int[] ovlDis = calDist.searchDistance(i, index);
-				if (ovlDis == null) {
-					ovlDis = (ovl).getOVLDistance(curSeq, comSeq);
-					//add to CalculatedOvlDistance
-					calDist.addDistance(i, index, ovlDis[1], ovlDis[0]);
-				}
+				CharSequence curSeq = graphNodes.get(i).getNodeStr();
+				CharSequence comSeq = graphNodes.get(index).getNodeStr();
+
+				int[] ovlDis = calDist.searchOrCalculate(i, index, ovlBuf, ovlCalculator);
 				
 				if (curSeq.length() <= comSeq.length()) {
 					if (ovlDis[1] == INT_MIN) { //has inclusion
@@ -123,70 +173,267 @@ public class Graph {
 		ArrayList<SixTuple> alignedNodes = handleInclusion();
 		int nOfNodes = alignedNodes.size();
 		
-		for (int i=0; i<nOfNodes; i++) {
-			int curIdx = alignedNodes.get(i).curNode;
-			if (inc.containInclusionNode(curIdx)) continue;
-			int leftNode = -1;
-			int rightNode = -1;
-			int maxLeft = INT_MIN;	//maximum left distance because left distance is negative
-			int minRight = INT_MAX;	//minimum right distance
-			int overlapLeft = 0;
-			int overlapRight = 0;
-			
-			WeightedEdgeIterator ite = (WeightedEdgeIterator) mst.edgeIterator(curIdx);
-			while (ite.hasNext()) {
-				Vertex v = (Vertex) ite.next();
-				int index = v.getIndex();
-				if (inc.containInclusionNode(index)) continue; 
-
-				int[] ovlDis = calDist.searchDistance(curIdx, index);
-				if (ovlDis == null) {
-
-					ovlDis = (ovl).getOVLDistance(graphNodes.get(curIdx).getNodeStr(), 
-							graphNodes.get(index).getNodeStr());
-					//add to CalculatedOvlDistance
-					calDist.addDistance(curIdx, index, ovlDis[1], ovlDis[0]);
+		if (numOfThreads <= 1) {
+			int[] ovlBuf = new int[2];	//the distance found in calDist
+			for (int i=0; i<nOfNodes; i++) {
+				set2CloseNodesFromMST(alignedNodes.get(i), ovlBuf);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+			try {
+				pool.invoke(new SixTupleTask(alignedNodes, 0, nOfNodes));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return alignedNodes;
+	}
+
+	/*
+	 * Compute the six-tuples of alignedNodes[lo] to alignedNodes[hi-1] in parallel. Every six-tuple only
+	 * depends on the MST and calDist, so they can be computed in any order.
+	 */
+	private class SixTupleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int MIN_NODES = 4;	//the nodes of a smaller task are computed in one thread
+		ArrayList<SixTuple> alignedNodes;
+		int lo;
+		int hi;
+
+		SixTupleTask(ArrayList<SixTuple> a, int l, int h) {
+			alignedNodes = a;
+			lo = l;
+			hi = h;
+		}
+
+		protected void compute() {
+			if (hi - lo <= MIN_NODES) {
+				int[] ovlBuf = new int[2];	//the distance found in calDist
+				for (int i=lo; i<hi; i++) {
+					set2CloseNodesFromMST(alignedNodes.get(i), ovlBuf);
 				}
-				
-				if (ovlDis[1] != INT_MAX) {	// there is overlap between them
-					if (ovlDis[0] < 0) {
-						if (ovlDis[1] > maxLeft){
-							maxLeft = ovlDis[1];
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new SixTupleTask(alignedNodes, lo, mid), new SixTupleTask(alignedNodes, mid, hi));
+			}
+		}
+	}
+
+	/*
+	 * find the two closest nodes to the left and to the right of the node among its parent and children 
+	 * in the MST, and set them into the six-tuple of the node.
+	 */
+	private void set2CloseNodesFromMST(SixTuple sixTuple, int[] ovlBuf) {
+		int curIdx = sixTuple.curNode;
+		if (inc.containInclusionNode(curIdx)) return;
+		int leftNode = -1;
+		int rightNode = -1;
+		int maxLeft = INT_MIN;	//maximum left distance because left distance is negative
+		int minRight = INT_MAX;	//minimum right distance
+		int overlapLeft = 0;
+		int overlapRight = 0;
+		
+		for (int k=mst.begin(curIdx); k<mst.end(curIdx); k++) {
+			int index = mst.target(k);
+			if (inc.containInclusionNode(index)) continue; 
+
+			int[] ovlDis = getOrderedDistance(curIdx, index, ovlBuf);
+			
+			if (ovlDis[1] != INT_MAX) {	// there is overlap between them
+				if (ovlDis[0] < 0) {
+					if (ovlDis[1] > maxLeft){
+						maxLeft = ovlDis[1];
+						overlapLeft = ovlDis[0];
+						leftNode = index;
+					} else if (ovlDis[1] == maxLeft) {	//if they are equal, find that one with maximal overlap
+						if (Math.abs(ovlDis[0]) > Math.abs(overlapLeft)) {
 							overlapLeft = ovlDis[0];
 							leftNode = index;
-						} else if (ovlDis[1] == maxLeft) {	//if they are equal, find that one with maximal overlap
-							if (Math.abs(ovlDis[0]) > Math.abs(overlapLeft)) {
-								overlapLeft = ovlDis[0];
-								leftNode = index;
-							}
 						}
 					}
-					if (ovlDis[0] > 0) {
-						if (ovlDis[1] < minRight) {
-							minRight = ovlDis[1];
+				}
+				if (ovlDis[0] > 0) {
+					if (ovlDis[1] < minRight) {
+						minRight = ovlDis[1];
+						overlapRight = ovlDis[0];
+						rightNode = index;
+					} else if (ovlDis[1] == minRight) {	//if they are equal, find that one with maximal overlap
+						if (Math.abs(ovlDis[0]) > Math.abs(overlapRight)) {
 							overlapRight = ovlDis[0];
 							rightNode = index;
-						} else if (ovlDis[1] == minRight) {	//if they are equal, find that one with maximal overlap
-							if (Math.abs(ovlDis[0]) > Math.abs(overlapRight)) {
-								overlapRight = ovlDis[0];
-								rightNode = index;
-							}
 						}
 					}
 				}
 			}
-			//leftNode, index of node on the left
-			//overlapLeft, overlap length
-			//maxLeft, overlap distance
-			//rightNode, index of node on the right
-			//overlapRight, overlap length
-			//minRight, overlap distance
-			alignedNodes.get(i).setSixTuple(leftNode, overlapLeft, maxLeft, rightNode, overlapRight, minRight);
 		}
-		return alignedNodes;
+		//leftNode, index of node on the left
+		//overlapLeft, overlap length
+		//maxLeft, overlap distance
+		//rightNode, index of node on the right
+		//overlapRight, overlap length
+		//minRight, overlap distance
+		sixTuple.setSixTuple(leftNode, overlapLeft, maxLeft, rightNode, overlapRight, minRight);
+	}
+
+	/*
+	 * The same as "handleInclusion", but the overlap distances of the MST edges are calculated by several
+	 * threads first. Every edge is calculated once in the order (min, max), which is the order in which 
+	 * the sequential loop meets it first, and the results are kept in edgeDis by the edge index of 
+	 * the smaller node. Then the loop of "handleInclusion" is replayed in the order of the nodes with the 
+	 * results, so every node gets the same parent as in the sequential loop (the first neighbour wins).
+	 * 
+	 * The only pair which is not taken from the results is (i, j) with i > j, if the loop of j breaks 
+	 * before j meets i and the two sequences have the same length. The sequential loop calculates it 
+	 * in the order (i, j) and it may not be the opposite of (j, i), so it is calculated again.
+	 */
+	private ArrayList<SixTuple> handleInclusionParallel() {
+		ArrayList<SixTuple> nodes = new ArrayList<SixTuple>();
+		int nOfNodes = mst.getCardV();
+		int[] edgeDis = new int[mst.getCardE()];	//overlap distance of each edge from the smaller node
+		
+		ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+		try {
+			pool.invoke(new EdgeSweepTask(edgeDis, 0, nOfNodes));
+		} finally {
+			pool.shutdown();
+		}
+		
+		int[] lastEdge = new int[nOfNodes];	//the last edge which is met in the loop of each node
+		for (int i=0; i<nOfNodes; i++) {
+			boolean flag = true;
+			lastEdge[i] = mst.end(i) - 1;
+			int curLen = graphNodes.get(i).getNodeStr().length();
+			for (int k=mst.begin(i); k<mst.end(i); k++) {
+				int index = mst.target(k);
+				int comLen = graphNodes.get(index).getNodeStr().length();
+				if (curLen > comLen) continue;
+				
+				int ovlDis;
+				if (index >= i) {
+					ovlDis = edgeDis[k];
+				} else {
+					int kk = mst.begin(index);
+					while (mst.target(kk) != i) {
+						kk++;
+					}
+					if ((kk <= lastEdge[index]) || (curLen != comLen)) {
+						ovlDis = (-1) * edgeDis[kk];
+					} else {
+						ovlDis = ovlCalculator.calculate(i, index, -1)[1];
+					}
+				}
+				
+				if (ovlDis == INT_MIN) { //has inclusion
+					inc.addNode(i, index); //get rid of i and put it into inclusion list.
+					lastEdge[i] = k;
+					flag = false;
+					break;
+				}
+			}
+			if (flag) {
+				nodes.add(new SixTuple(i));
+			}
+		}
+		return nodes;
+	}
+	
+	/*
+	 * calculate the overlap distances of the MST edges from the nodes lo to hi-1 to the nodes 
+	 * with larger (or the same) indices.
+	 */
+	private class EdgeSweepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int MIN_NODES = 16;	//the nodes of a smaller task are computed in one thread
+		int[] edgeDis;
+		int lo;
+		int hi;
+
+		EdgeSweepTask(int[] ed, int l, int h) {
+			edgeDis = ed;
+			lo = l;
+			hi = h;
+		}
+
+		protected void compute() {
+			if (hi - lo <= MIN_NODES) {
+				int[] ovlBuf = new int[2];	//the distance found in calDist
+				for (int i=lo; i<hi; i++) {
+					for (int k=mst.begin(i); k<mst.end(i); k++) {
+						int index = mst.target(k);
+						if (index < i) continue;
+						int[] ovlDis = calDist.searchOrCalculate(i, index, ovlBuf, ovlCalculator);
+						edgeDis[k] = ovlDis[1];
+					}
+				}
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new EdgeSweepTask(edgeDis, lo, mid), new EdgeSweepTask(edgeDis, mid, hi));
+			}
+		}
+	}
+
+	/*
+	 * Get the overlap distance between i1 and i2 from calDist. A pair which has not been calculated is 
+	 * calculated in the order (min, max), that is the order in which the sequential loop of 
+	 * get2CloseNodesFromMST meets it first, so the result does not depend on which thread gets the pair first.
+	 */
+	private int[] getOrderedDistance(int i1, int i2, int[] ovlBuf) {
+		if (i1 <= i2) {
+			return calDist.searchOrCalculate(i1, i2, ovlBuf, ovlCalculator);
+		}
+		int[] ret = calDist.searchOrCalculate(i2, i1, ovlBuf, ovlCalculator);
+		ret[0] = (-1) * ret[0];
+		ret[1] = (-1) * ret[1];
+		return ret;
 	}
 
 	
+	/*
+	 * get the MSTFrontier of the current thread, it is created again if the MST is changed.
+	 */
+	private MSTFrontier getFrontier() {
+		MSTFrontier f = frontier.get();
+		if ((f == null) || (f.mst != mst)) {
+			f = new MSTFrontier(mst);
+			frontier.set(f);
+		}
+		return f;
+	}
+
+	/*
+	 * Get the overlap distance between index and other from calDist for the tuple of index. If the two 
+	 * ests have the same length and the tuple of other is before it in the pass, wait for that tuple 
+	 * to finish first, so the pair is calculated in the same orientation as processing the tuples one by one.
+	 */
+	private int[] getDistance(int index, int other, int[] ovlBuf, TupleOrder order) {
+		if ((order != null) && order.isBefore(other, index) 
+				&& (getLenOfNode(index) == getLenOfNode(other)) 
+				&& !calDist.searchDistance(index, other, ovlBuf)) {
+			order.await(other);
+		}
+		return calDist.searchOrCalculate(index, other, ovlBuf, ovlCalculator);
+	}
+
+	/*
+	 * Same as getDistance, but the distance is only needed if it is not bigger than the current distances
+	 * to the left and to the right, or there is inclusion. The alignments which can not give such a distance 
+	 * are skipped (see getOVLDistance in OvlDistance.java), and null is returned if the distance is not known.
+	 * It goes through calDist like getDistance, so a pair is never aligned by two threads at the same time. 
+	 * A pruned pair is kept in calDist with its bound only, so it is not aligned again for the same or a
+	 * smaller bound, but it is if its distance is needed later.
+	 * 
+	 * The nodes with the same length are never skipped. Their distance may depend on the order of the 
+	 * two nodes, so it must be calculated in the same order as without skipping.
+	 * @param maxLeft, minRight the current distances to the left and to the right.
+	 */
+	private int[] getNeededDistance(int index, int tmpIndex, int[] ovlBuf, TupleOrder order, int maxLeft, int minRight) {
+		if (!candidatePruning || (getLenOfNode(index) == getLenOfNode(tmpIndex))) {
+			return getDistance(index, tmpIndex, ovlBuf, order);
+		}
+		int maxDis = Math.max((maxLeft == INT_MIN) ? INT_MAX : Math.abs(maxLeft), minRight);
+		return calDist.searchOrCalculate(index, tmpIndex, ovlBuf, ovlCalculator, maxDis);
+	}
+
 	/**
 	 * Get two closest nodes which is on the left and on the right to the 'index' node
 	 * from the input minimum spanning tree, and store the data into an array.
@@ -207,6 +454,15 @@ public class Graph {
 	 * 						For the third and sixth one, if no node is found, the value is INT_MIN or INT_MAX.
 	 */
 	public SixTuple get2CloseNodesFromGrand(int index, SixTuple sixTuple) {
+		return get2CloseNodesFromGrand(index, sixTuple, null, inc);
+	}
+
+	/*
+	 * Same as above, it is used when several tuples are processed at the same time.
+	 * @param order the order of the tuples in the pass, null if they are processed one by one.
+	 * @param found the inclusion pairs which are found are put into it.
+	 */
+	public SixTuple get2CloseNodesFromGrand(int index, SixTuple sixTuple, TupleOrder order, InclusionNodes found) {
 		SixTuple closeNode = new SixTuple();
 		
 		int leftNode = -1;
@@ -220,51 +476,31 @@ public class Graph {
 		int overlapLeft = sixTuple.lOvlLen;
 		int overlapRight = sixTuple.rOvlLen;
 		
-		//put all the nodes within three levels from the current node into the stack "allNodes". Do not 
+		//get all the nodes which are two or three levels from the current node, every node once. Do not 
 		// include parents and children because they have been processed.
-		Stack<Integer> allNodes = new Stack<Integer> ();
-		Stack<Integer> partNodes = new Stack<Integer> ();
-		partNodes.push(Integer.valueOf(index));
-		
+		MSTFrontier nodes = getFrontier();
+		nodes.start(index);
 		for (int i=0; i<3; i++) {
-			Stack<Integer> tmpStack = new Stack<Integer> ();
-			
-			while (!partNodes.empty()) {
-				int tmpIndex = partNodes.pop();
-				WeightedEdgeIterator ite = (WeightedEdgeIterator) mst.edgeIterator(tmpIndex);
-				while (ite.hasNext()) {
-					Vertex v = (Vertex) ite.next();
-					int tIndex = v.getIndex();
-					tmpStack.push(Integer.valueOf(tIndex));
-					
-					if ((i != 0) && (tIndex != index)){ //Do not include parents and children because they have been processed.
-						allNodes.push(Integer.valueOf(tIndex));
-					}
-				}
-			}
-			partNodes = tmpStack;
+			nodes.expand();	//the second level is kept as the previous level of the third one
 		}
+		int numOfNodes = nodes.size() + nodes.prevSize();
 
 		//find two closest nodes
-		String s1 = graphNodes.get(index).getNodeStr();
-		while (!allNodes.isEmpty()) {
-			int tmpIndex = allNodes.pop();
+		CharSequence s1 = graphNodes.get(index).getNodeStr();
+		int[] ovlBuf = new int[2];	//the distance found in calDist
+		for (int j=0; j<numOfNodes; j++) {	//the third level from the last node, then the second level
+			int tmpIndex = (j < nodes.size()) ? nodes.get(nodes.size()-1-j) : nodes.getPrev(numOfNodes-1-j);
 			if (inc.containInclusionNode(tmpIndex)) continue; 
-			String s2 = graphNodes.get(tmpIndex).getNodeStr();
+			CharSequence s2 = graphNodes.get(tmpIndex).getNodeStr();
 
-			int[] ovlDis = calDist.searchDistance(index, tmpIndex);
-			if (ovlDis == null) {
-				ovlDis = (ovl).getOVLDistance(s1, s2);
-
-				//add to CalculatedOvlDistance
-				calDist.addDistance(index, tmpIndex, ovlDis[1], ovlDis[0]);
-			}
+			int[] ovlDis = getNeededDistance(index, tmpIndex, ovlBuf, order, maxLeft, minRight);
+			if (ovlDis == null) continue;	//it can not be closer than leftNode and rightNode
 			
 			if (ovlDis[1] == INT_MIN) {	// there is inclusion between them
 				if (s1.length() >= s2.length()) {
-					inc.addNode2(tmpIndex, index);
+					found.addNode2(tmpIndex, index);
 				} else {
-					inc.addNode2(index, tmpIndex);
+					found.addNode2(index, tmpIndex);
 				}
 			} else if (ovlDis[1] != INT_MAX) {	// there is overlap between them
 				if (ovlDis[0] < 0) {
@@ -318,31 +554,28 @@ public class Graph {
 	 * if it does, six-tuple.leftEnd = -1.
 	 */
 	public SixTuple checkLeftEndFromMST(int index, SixTuple sixTuple) {
-		if (numOfLevels == 0) { //keep checking until leaves
-			numOfLevels = INT_MAX;
-		}
-		
-		Stack<Integer>[] nodes = new Stack[2];
-		nodes[0] = new Stack<Integer>();
-		nodes[1] = new Stack<Integer>();
-		nodes[0].push(Integer.valueOf(index));
-		nodes[1].push(Integer.valueOf(-1));
+		return checkLeftEndFromMST(index, sixTuple, null, inc);
+	}
+
+	public SixTuple checkLeftEndFromMST(int index, SixTuple sixTuple, TupleOrder order, InclusionNodes found) {
+		MSTFrontier nodes = getFrontier();
+		nodes.start(index);
 		
 		for (int i=0; i<3; i++) { //skip over all the nodes within 3 levels
-			nodes = getNodesFromMST(nodes);
+			nodes.expand();
 		}
 		
 		for (int foundLevel=4; foundLevel<=numOfLevels; foundLevel++) { //start from level 4
-			nodes = getNodesFromMST(nodes);
+			nodes.expand();
 			
 //			System.out.println("GetNodeFromMST for foundLevel=" + foundLevel
 //					+ "; index=" + index);
-//			System.out.println("\tnumber of nodes = " + nodes[0].size());
+//			System.out.println("\tnumber of nodes = " + nodes.size());
 		
-			if (nodes[0].size() == 0) {
+			if (nodes.size() == 0) {
 				break;
 			} else {
-				SixTuple closeNode = findAdjacentNode(nodes[0], index, sixTuple);
+				SixTuple closeNode = findAdjacentNode(nodes, index, sixTuple, order, found);
 				if (closeNode.leftNode != -1) {
 //					System.out.println("findAdjacentNode for index=" + index + "; adjNode=" + closeNode.leftNode);
 					return closeNode;
@@ -355,27 +588,24 @@ public class Graph {
 	}
 	
 	public SixTuple checkRightEndFromMST(int index, SixTuple sixTuple) {
-		if (numOfLevels == 0) { //keep checking until leaves
-			numOfLevels = INT_MAX;
-		}
-		
-		Stack<Integer>[] nodes = new Stack[2];
-		nodes[0] = new Stack<Integer>();
-		nodes[1] = new Stack<Integer>();
-		nodes[0].push(Integer.valueOf(index));
-		nodes[1].push(Integer.valueOf(-1));
+		return checkRightEndFromMST(index, sixTuple, null, inc);
+	}
+
+	public SixTuple checkRightEndFromMST(int index, SixTuple sixTuple, TupleOrder order, InclusionNodes found) {
+		MSTFrontier nodes = getFrontier();
+		nodes.start(index);
 		
 		for (int i=0; i<3; i++) { //skip over all the nodes within 3 levels
-			nodes = getNodesFromMST(nodes);
+			nodes.expand();
 		}
 		
 		for (int foundLevel=4; foundLevel<=numOfLevels; foundLevel++) { //start from level 4
-			nodes = getNodesFromMST(nodes);
+			nodes.expand();
 			
-			if (nodes[0].size() == 0) {
+			if (nodes.size() == 0) {
 				break;
 			} else {
-				SixTuple closeNode = findAdjacentNode(nodes[0], index, sixTuple);
+				SixTuple closeNode = findAdjacentNode(nodes, index, sixTuple, order, found);
 				if (closeNode.rightNode != -1) {
 					return closeNode;
 				}
@@ -386,17 +616,14 @@ public class Graph {
 	}
 
 	/*
-	 * find the most adjacent node to the current node from allNodes.
-	 * @param allNodes Store indices of all the nodes which will be compared to the current node.
+	 * find the most adjacent node to the current node from the current level of nodes.
+	 * @param nodes The nodes which will be compared to the current node, they are compared from the last one to the first one.
 	 * @param index The index of current node.
 	 * @sixTuple The sixTuple for the current node.
+	 * @param order the order of the tuples in the pass, null if they are processed one by one.
+	 * @param found the inclusion pairs which are found are put into it.
 	 */
-	private SixTuple findAdjacentNode(Stack<Integer> nodes, int index, SixTuple sixTuple) {
-		Stack<Integer> allNodes = new Stack<Integer> (); //put all the values of nodes into another stack so that we won't change nodes(it's a pointer) because it may be used by the calling method.
-		for (int i=0; i<nodes.size(); i++) { //get(0) will get the bottom element of the stack
-			allNodes.push(nodes.get(i));
-		}
-		
+	private SixTuple findAdjacentNode(MSTFrontier nodes, int index, SixTuple sixTuple, TupleOrder order, InclusionNodes found) {
 		SixTuple closeNode = new SixTuple();
 		
 		int leftNode = -1;
@@ -407,27 +634,23 @@ public class Graph {
 		int overlapRight = sixTuple.rOvlLen;
 
 		//find two closest nodes
-		String s1 = graphNodes.get(index).getNodeStr();
-		while (!allNodes.empty()) {
-			int tmpIndex = (Integer) allNodes.pop();
+		CharSequence s1 = graphNodes.get(index).getNodeStr();
+		int[] ovlBuf = new int[2];	//the distance found in calDist
+		for (int i=nodes.size()-1; i>=0; i--) {
+			int tmpIndex = nodes.get(i);
 			if (inc.containInclusionNode(tmpIndex)) continue; 
 			if (tmpIndex == index) continue;
-			String s2 = graphNodes.get(tmpIndex).getNodeStr();
-
-			int[] ovlDis = calDist.searchDistance(index, tmpIndex);
-			if (ovlDis == null) {
-				ovlDis = (ovl).getOVLDistance(s1, s2);
+			CharSequence s2 = graphNodes.get(tmpIndex).getNodeStr();
 
-				//add to CalculatedOvlDistance
-				calDist.addDistance(index, tmpIndex, ovlDis[1], ovlDis[0]);
-			}
+			int[] ovlDis = getNeededDistance(index, tmpIndex, ovlBuf, order, maxLeft, minRight);
+			if (ovlDis == null) continue;	//it can not be closer than leftNode and rightNode
 
 			
 			if (ovlDis[1] == INT_MIN) {	// there is inclusion between them
 				if (s1.length() >= s2.length()) {
-					inc.addNode2(tmpIndex, index);
+					found.addNode2(tmpIndex, index);
 				} else {
-					inc.addNode2(index, tmpIndex);
+					found.addNode2(index, tmpIndex);
 				}
 			} else if (ovlDis[1] != INT_MAX) {	// there is overlap between them
 				if (ovlDis[0] < 0) {
@@ -467,39 +690,6 @@ public class Graph {
 		return closeNode;
 	}
 
-	/**
-	 * Get all the children for the input nodes and put them into a stack.
-	 * 
-	 * @param mst a Minimum Spanning Tree.
-	 * @param nodes The stack array, nodes[0], the indexes of all the nodes for which we will find their children;
-	 * 		nodes[1], the indexes of the parent node of every element in nodes[0].
-	 * @return a stack array which stores all the found nodes' indexes. ret[0], the indexes of all the found nodes
-	 * 		(that is, the children of input nodes); ret[1], the indexes of the parent node of every element in nodes[0].
-	 */
-	private Stack<Integer>[] getNodesFromMST(Stack<Integer>[] nodes) {
-		Stack<Integer>[] ret = new Stack[2];
-		ret[0] = new Stack<Integer>();
-		ret[1] = new Stack<Integer>();
-		while (!(nodes[0].empty())) {
-			int curIndex = (Integer) nodes[0].pop();
-			int parentIndex = (Integer) nodes[1].pop();
-			
-			WeightedEdgeIterator ite = (WeightedEdgeIterator) mst.edgeIterator(curIndex);
-			while (ite.hasNext()) {
-				Vertex v = (Vertex) ite.next();
-				int index2 = v.getIndex();
-				
-				if (index2 != parentIndex) {
-					ret[0].push(Integer.valueOf(index2));
-					ret[1].push(Integer.valueOf(curIndex));
-				}
-			}
-		}
-		return ret;
-	}
-
-	
-	
 	public static void main(String args[]) {
 		/*
 		Graph g= new Graph();
@@ -1,40 +1,48 @@
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Stack;
 import java.util.TreeSet;
-
-import com.mhhe.clrs2e.Vertex;
-import com.mhhe.clrs2e.WeightedAdjacencyListGraph;
-import com.mhhe.clrs2e.WeightedEdgeIterator;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 /*
  * record all the nodes which are included in other nodes.
  * We get rid of them from the input MST and put them into the class. Then 
  * we use them again during reconstruction the consensus.
+ *
+ * It can be used by several threads at the same time. "nodes" is a concurrent sorted set, so it is 
+ * searched without locking; the other members are used while holding the lock of the object.
  */
 public class InclusionNodes {
-	TreeSet<InclusionNode> nodes; //Used in handleInclusion in Graph.java. The compared member variable has to be unique.
+	ConcurrentSkipListSet<InclusionNode> nodes; //Used in handleInclusion in Graph.java. The compared member variable has to be unique.
 	ArrayList<PairNode> nodes2; //Used in get2CloseNodesFromGrand and findAdjacentNode in Graph.java.
-	WeightedAdjacencyListGraph directedGraph;
+	CSRGraph directedGraph;
 	TreeSet<PNode> pNodes; //store all the parent nodes in nodes and nodes2.
 
 	
 	public InclusionNodes() {
-		nodes = new TreeSet<InclusionNode>();
+		nodes = new ConcurrentSkipListSet<InclusionNode>();
 		nodes2 = new ArrayList<PairNode>();
 		pNodes = new TreeSet<PNode>();
 		directedGraph = null;
 	}
 	
-	// chd is included in parent.
+	// chd is included in parent. Nothing is changed if chd is in the list.
 	public void addNode(int chd, int parent) {
 		nodes.add(new InclusionNode(chd, parent));
 	}
 	
-	public void addNode2(int chd, int parent) {
+	public synchronized void addNode2(int chd, int parent) {
 		nodes2.add(new PairNode(chd, parent));
 	}
 
+	/*
+	 * append all the pairs in nodes2 of "other" to nodes2 in their order.
+	 */
+	public synchronized void addAllNode2(InclusionNodes other) {
+		synchronized (other) {
+			nodes2.addAll(other.nodes2);
+		}
+	}
+
 	public int getSize() {
 		return nodes.size();
 	}
@@ -51,7 +59,7 @@ public class InclusionNodes {
 	 * else return -1.
 	 * Called by addInclusionNodes in ESTAssembly.java.
 	 */
-	public int[] containPNode(int pIdx, int numOfTotalNodes) {
+	public synchronized int[] containPNode(int pIdx, int numOfTotalNodes) {
 		if (directedGraph == null) {
 			makeDirectedGraph(numOfTotalNodes);
 		}
@@ -60,7 +68,6 @@ public class InclusionNodes {
 			return null;
 		}
 		
-		Stack<Integer> allNodes = new Stack<Integer> ();
 //		Stack<Integer> partNodes = new Stack<Integer> ();
 //		partNodes.push(Integer.valueOf(pIdx));
 //		
@@ -79,16 +86,9 @@ public class InclusionNodes {
 //			partNodes = tmpStack;
 //		}
 		
-		WeightedEdgeIterator ite = (WeightedEdgeIterator) directedGraph.edgeIterator(pIdx);
-		while (ite.hasNext()) {
-			Vertex v = (Vertex) ite.next();
-			int tIndex = v.getIndex();
-			allNodes.push(Integer.valueOf(tIndex));
-		}
-
-		int[] values = new int[allNodes.size()];
-		for (int i=0; i<allNodes.size(); i++) {
-			values[i] = allNodes.get(i);
+		int[] values = new int[directedGraph.degree(pIdx)];
+		for (int k=directedGraph.begin(pIdx); k<directedGraph.end(pIdx); k++) {
+			values[k - directedGraph.begin(pIdx)] = directedGraph.target(k);
 		}
 
 		return values;		
@@ -97,28 +97,35 @@ public class InclusionNodes {
 	private void makeDirectedGraph(int numOfTotalNodes) {
 		// Make a directed graph.
 		int nOfNodes = numOfTotalNodes;
-		directedGraph = new WeightedAdjacencyListGraph(nOfNodes, true);
-		
-		for (int i=0; i<nOfNodes; i++) {
-			directedGraph.addVertex(i, Integer.toString(i));
-		}
+		int numEdges = nodes.size() + nodes2.size();
+		int[] us = new int[numEdges];
+		int[] vs = new int[numEdges];
+		double[] ws = new double[numEdges];
+		int j = 0;
 
 		Iterator<InclusionNode> ite = nodes.iterator();
 		while (ite.hasNext()) {
 			InclusionNode n1 = ite.next();
-			directedGraph.addEdge(n1.idxP, n1.idxChd, 1);
+			us[j] = n1.idxP;
+			vs[j] = n1.idxChd;
+			ws[j] = 1;
+			j++;
 			pNodes.add(new PNode(n1.idxP));
 		}
 		
 		Iterator<PairNode> ite2 = nodes2.iterator();
 		while (ite2.hasNext()) {
 			PairNode n1 = ite2.next();
-			directedGraph.addEdge(n1.idxP, n1.idxChd, 1);
+			us[j] = n1.idxP;
+			vs[j] = n1.idxChd;
+			ws[j] = 1;
+			j++;
 			pNodes.add(new PNode(n1.idxP));
 		}
+		directedGraph = new CSRGraph(nOfNodes, true, us, vs, ws, numEdges);
 	}
 	
-	public void printAllNodes() {
+	public synchronized void printAllNodes() {
 		System.out.println("childIndex\tparentIndex");
 		Iterator<InclusionNode> ite = nodes.iterator();
 		while (ite.hasNext()) {
@@ -133,7 +140,7 @@ public class InclusionNodes {
 	}
 	
 	//return the indices of all the children nodes in nodes and nodes2
-	public int[] getAllChdNodes() {
+	public synchronized int[] getAllChdNodes() {
 		int size = nodes.size() + nodes2.size();
 		int[] ret = new int[size];
 		int i=0;
@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * An inverted index from a word (k-mer) to all the nodes which include it and the number of instances
+ * in each node. It is created once for all the nodes in the graph after the est file is read, and is used
+ * by the u/v and t/v heuristics in D2.java instead of hashing the compared est for every pair.
+ *
+ * The index is stored in three arrays:
+ * 		nodes[offsets[c]] to nodes[offsets[c+1]-1] - indices of the nodes which include the word with code c, 
+ * 			in ascending order. offsets has an entry for every possible word (4^wordSize + 1 entries), so
+ * 			the nodes of a word are found without any search;
+ * 		counts[k] - the number of instances of the word in nodes[k].
+ */
+public class KmerIndex {
+	int wordSize;
+	int[] offsets;
+	int[] nodes;
+	int[] counts;
+
+	/*
+	 * @param profiles the D2 profiles of all the nodes, profiles.get(i) is the profile of node i.
+	 * @param wSize the length of the word.
+	 */
+	public KmerIndex(ArrayList<D2Profile> profiles, int wSize) {
+		wordSize = wSize;
+		int nOfNodes = profiles.size();
+
+		//get the different words and their counts for each node
+		int[][] nodeWords = new int[nOfNodes][];
+		int[][] nodeCounts = new int[nOfNodes][];
+		int total = 0;
+		for (int i=0; i<nOfNodes; i++) {
+			int[] words = profiles.get(i).encodeWords(wordSize);
+			int n = 0;
+			for (int j=0; j<words.length; j++) {
+				if (words[j] >= 0) {
+					words[n++] = words[j];
+				}
+			}
+			nodeWords[i] = D2Profile.distinct(words, n);	//words[0..n-1] is sorted by "distinct"
+			nodeCounts[i] = new int[nodeWords[i].length];
+			int k = -1;
+			for (int j=0; j<n; j++) {
+				if ((j == 0) || (words[j] != words[j-1])) {
+					k++;
+				}
+				nodeCounts[i][k]++;
+			}
+			total += nodeWords[i].length;
+		}
+
+		//counting sort by word. Nodes are visited in ascending order, so the nodes of each word are sorted.
+		int numWords = 1 << (wordSize << 1);
+		offsets = new int[numWords + 1];
+		for (int i=0; i<nOfNodes; i++) {
+			for (int j=0; j<nodeWords[i].length; j++) {
+				offsets[nodeWords[i][j] + 1]++;
+			}
+		}
+		for (int c=0; c<numWords; c++) {
+			offsets[c+1] += offsets[c];
+		}
+		nodes = new int[total];
+		counts = new int[total];
+		int[] next = new int[numWords];
+		System.arraycopy(offsets, 0, next, 0, numWords);
+		for (int i=0; i<nOfNodes; i++) {
+			for (int j=0; j<nodeWords[i].length; j++) {
+				int c = nodeWords[i][j];
+				nodes[next[c]] = i;
+				counts[next[c]] = nodeCounts[i][j];
+				next[c]++;
+			}
+		}
+	}
+
+	public int getWordSize() {
+		return wordSize;
+	}
+
+	/*
+	 * get the number of instances of the word in the node.
+	 * @return the number, 0 if the node does not include the word.
+	 */
+	public int getCount(int code, int node) {
+		int begin = offsets[code];
+		int end = offsets[code+1];
+		if (begin == end) {
+			return 0;
+		}
+		int k = Arrays.binarySearch(nodes, begin, end, node);
+		if (k < 0) {
+			return 0;
+		}
+		return counts[k];
+	}
+}
@@ -0,0 +1,18 @@
+/*
+ * The first pass of the local alignment in Alignment.getLocalAlignment: the Smith-Waterman matrix of
+ * the strings in the workspace is calculated row by row, and the maximal cell is found.
+ *
+ * ScalarLocalAlignmentKernel is the scalar pass. A kernel with the Vector API is in src-vector/VectorLocalAlignmentKernel.java,
+ * it is only used when it is compiled and the jdk.incubator.vector module is added (see "loadVectorKernel"
+ * in Alignment.java). Both give exactly the same result.
+ */
+interface LocalAlignmentKernel {
+	/*
+	 * Calculate the rows 1 to w.len1 of the matrix of w.seq1 and w.seq2 with the scores LOCAL_* of Alignment.
+	 * Every CHECKPOINT_ROWS rows (and the row 0), the row is saved into w.checkpoints.
+	 * The buffers must be big enough for the strings, see "getLocalAlignment".
+	 * @param max set to the maximal score, its row and its column. If several cells have the maximal score,
+	 * 		it is the first one in the order of rows, the same as neobio.
+	 */
+	void forwardPass(AlignWorkspace w, int[] max);
+}
@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/*
+ * The nodes of the MST which are exactly k edges away from a node, expanded level by level from the node.
+ * The levels are kept in int arrays which are reused for all the nodes, so no object is created:
+ * 		f.start(index);
+ * 		f.expand();	//level 1
+ * 		for (int i=f.size()-1; i>=0; i--) {
+ * 			int v = f.get(i);
+ * 			...
+ * 		}
+ *
+ * Every node is put into one level only. The visited nodes are marked with the number of the current
+ * start in "visited", so the marks do not need to be cleared for the next start.
+ *
+ * The nodes of every level are in the same order as the stacks which were used before: the nodes of the
+ * last level are expanded from the last one to the first one, and the neighbours of each of them which
+ * have not been visited are added in the order of the MST. So the ties in Graph.java are broken in the 
+ * same way. One object must not be used by two threads at the same time.
+ */
+public class MSTFrontier {
+	CSRGraph mst;
+	int[] nodes;	//nodes of the current level
+	int size;
+	int[] prevNodes;	//nodes of the previous level, they are kept until the next "expand"
+	int prevSize;
+	int[] visited;	//visited[v] == epoch if node v has been visited since the last start
+	int epoch;
+
+	public MSTFrontier(CSRGraph m) {
+		mst = m;
+		int capacity = Math.max(mst.getCardV(), 1);
+		nodes = new int[capacity];
+		prevNodes = new int[capacity];
+		visited = new int[mst.getCardV()];
+		size = 0;
+		prevSize = 0;
+		epoch = 0;
+	}
+
+	/*
+	 * make the node "index" the only node of the current level (level 0).
+	 */
+	public void start(int index) {
+		epoch++;
+		if (epoch == 0) {	//the number wraps around, clear the old marks
+			Arrays.fill(visited, 0);
+			epoch = 1;
+		}
+		visited[index] = epoch;
+		nodes[0] = index;
+		size = 1;
+		prevSize = 0;
+	}
+
+	/*
+	 * go to the next level: all the neighbours of the current nodes which have not been visited.
+	 */
+	public void expand() {
+		int[] tmp = prevNodes;
+		prevNodes = nodes;
+		prevSize = size;
+		nodes = tmp;
+
+		int num = 0;
+		for (int i=prevSize-1; i>=0; i--) {
+			int cur = prevNodes[i];
+			for (int k=mst.begin(cur); k<mst.end(cur); k++) {
+				int v = mst.target(k);
+				if (visited[v] != epoch) {
+					visited[v] = epoch;
+					nodes[num++] = v;
+				}
+			}
+		}
+		size = num;
+	}
+
+	/*
+	 * number of nodes in the current level.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * the i-th node of the current level.
+	 */
+	public int get(int i) {
+		return nodes[i];
+	}
+
+	/*
+	 * number of nodes in the previous level.
+	 */
+	public int prevSize() {
+		return prevSize;
+	}
+
+	/*
+	 * the i-th node of the previous level.
+	 */
+	public int getPrev(int i) {
+		return prevNodes[i];
+	}
+}
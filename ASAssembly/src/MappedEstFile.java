@@ -0,0 +1,226 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * An est file in FASTA format which is memory-mapped and parsed in place.
+ * The bases are streamed directly into the sequence store of the graph, and the description lines
+ * are only kept as offsets in the file; they are read from the mapped file the first time the name or
+ * the comment of a node is used. So no intermediate string is generated for any est.
+ *
+ * A file larger than REGION_SIZE (1G) is mapped in several regions of REGION_SIZE bytes. A large file is
+ * parsed by several threads, see "load".
+ */
+public class MappedEstFile {
+	private static final int REGION_BITS = 30;
+	private static final long REGION_SIZE = 1L << REGION_BITS;
+	private static final long REGION_MASK = REGION_SIZE - 1;
+	private static final long MIN_CHUNK_SIZE = 1L << 20;	//a smaller file is not split
+
+	private MappedByteBuffer[] regions;
+	private long size;	//number of bytes in the file
+
+	public MappedEstFile(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			size = ch.size();
+			regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_BITS)];
+			for (int i=0; i<regions.length; i++) {
+				long start = ((long) i) << REGION_BITS;
+				regions[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+			}
+		} finally {
+			raf.close();	//the mapping is still valid after the channel is closed
+		}
+	}
+
+	/*
+	 * get the byte at position pos of the file as an unsigned value.
+	 */
+	private int get(long pos) {
+		return regions[(int) (pos >>> REGION_BITS)].get((int) (pos & REGION_MASK)) & 0xff;
+	}
+
+	/*
+	 * Parse all the ests and add them to the graph in the order of the file, so the index of each node
+	 * is the same as its index in the MST file.
+	 *
+	 * The file is split into numThreads chunks at the beginning of records, and every chunk is parsed
+	 * and encoded by its own thread into a separate sequence store. Then the chunks are appended to the
+	 * sequence store of the graph one by one in the order of the file. If numThreads <= 1, the file is
+	 * parsed into the sequence store of the graph directly.
+	 */
+	public void load(Graph g, int numThreads) {
+		SequenceStore store = g.getSeqStore();
+		if ((numThreads <= 1) || (size < MIN_CHUNK_SIZE * 2)) {
+			int first = store.getSize();
+			Chunk c = new Chunk(0, size, store);
+			c.run();
+			addNodes(g, c, first);
+			return;
+		}
+
+		int numChunks = (int) Math.min(numThreads, size / MIN_CHUNK_SIZE);
+		long[] bounds = new long[numChunks + 1];
+		for (int i=1; i<numChunks; i++) {
+			bounds[i] = nextRecord(Math.max(size / numChunks * i, bounds[i-1]));
+		}
+		bounds[numChunks] = size;
+
+		ExecutorService pool = Executors.newFixedThreadPool(numChunks);
+		try {
+			ArrayList<Future<Chunk>> results = new ArrayList<Future<Chunk>> ();
+			for (int i=0; i<numChunks; i++) {
+				Chunk c = new Chunk(bounds[i], bounds[i+1], new SequenceStore());
+				results.add(pool.submit(c, c));
+			}
+			for (int i=0; i<numChunks; i++) {
+				Chunk c = results.get(i).get();
+				addNodes(g, c, store.addAll(c.store));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * add the records of the chunk to the graph.
+	 * @param first index of the first sequence of the chunk in the sequence store of the graph.
+	 */
+	private void addNodes(Graph g, Chunk c, int first) {
+		SequenceStore store = g.getSeqStore();
+		for (int i=0; i<c.numRecords; i++) {
+			g.addNode(new Node(this, c.headerStart[i], c.headerLen[i], store.getSeq(first + i)));
+		}
+	}
+
+	/*
+	 * find the first description line which begins at or after pos.
+	 * @return the position of the beginning of the line, or the size of the file if there is no such line.
+	 */
+	private long nextRecord(long pos) {
+		if ((pos > 0) && (get(pos-1) != '\n')) {	//go to the beginning of the next line
+			while ((pos < size) && (get(pos) != '\n')) {
+				pos++;
+			}
+			pos++;
+		}
+		while (pos < size) {
+			long s = pos;
+			while ((s < size) && (get(s) <= ' ') && (get(s) != '\n')) {
+				s++;
+			}
+			if ((s < size) && (get(s) == '>')) {
+				return pos;
+			}
+			while ((pos < size) && (get(pos) != '\n')) {
+				pos++;
+			}
+			pos++;
+		}
+		return size;
+	}
+
+	/*
+	 * The records between two positions of the file. The bases are put into "store", and the description
+	 * lines into headerStart and headerLen.
+	 *
+	 * Every line is trimmed and empty lines are skipped. A line beginning with '>' is a description line,
+	 * the other lines of a record are concatenated and upper-cased. Lines before the first description
+	 * line are ignored, so a chunk must begin at a description line unless it is the first one.
+	 */
+	private class Chunk implements Runnable {
+		long start;
+		long end;
+		SequenceStore store;
+		int numRecords;
+		long[] headerStart;	//start of the description of each record (without '>')
+		int[] headerLen;
+
+		Chunk(long s, long e, SequenceStore st) {
+			start = s;
+			end = e;
+			store = st;
+			numRecords = 0;
+			headerStart = new long[16];
+			headerLen = new int[16];
+		}
+
+		public void run() {
+			boolean inRecord = false;
+			long pos = start;
+			while (pos < end) {
+				long lineEnd = pos;
+				while ((lineEnd < end) && (get(lineEnd) != '\n')) {
+					lineEnd++;
+				}
+				//trim the line like String.trim()
+				long s = pos;
+				long e = lineEnd;
+				while ((s < e) && (get(s) <= ' ')) {
+					s++;
+				}
+				while ((e > s) && (get(e-1) <= ' ')) {
+					e--;
+				}
+
+				if (s < e) {
+					if (get(s) == '>') {
+						if (inRecord) {
+							store.endSeq();
+						}
+						addHeader(s + 1, (int) (e - s - 1));
+						inRecord = true;
+					} else if (inRecord) {
+						for (long k=s; k<e; k++) {
+							store.append(Character.toUpperCase((char) get(k)));
+						}
+					}
+				}
+				pos = lineEnd + 1;
+			}
+			if (inRecord) {
+				store.endSeq();
+			}
+		}
+
+		private void addHeader(long s, int len) {
+			if (numRecords == headerStart.length) {
+				long[] tmpStart = new long[numRecords * 2];
+				int[] tmpLen = new int[numRecords * 2];
+				System.arraycopy(headerStart, 0, tmpStart, 0, numRecords);
+				System.arraycopy(headerLen, 0, tmpLen, 0, numRecords);
+				headerStart = tmpStart;
+				headerLen = tmpLen;
+			}
+			headerStart[numRecords] = s;
+			headerLen[numRecords] = len;
+			numRecords++;
+		}
+	}
+
+	/*
+	 * read the description line of a record.
+	 * @param offset position of the first character after '>'.
+	 */
+	public String getHeader(long offset, int len) {
+		byte[] b = new byte[len];
+		for (int i=0; i<len; i++) {
+			b[i] = (byte) get(offset + i);
+		}
+		return new String(b);
+	}
+}
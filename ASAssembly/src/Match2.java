@@ -21,6 +21,9 @@
 // Veterinary and Agricultural University, Copenhagen, Denmark, can
 // take any responsibility for the consequences of using this code.
 
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 // Compile with:
 //      javac Match2.java
 // Run with:
@@ -38,9 +41,12 @@
 //        NWAffine          global alignment with affine gap costs
 //     AlignSmart           alignment using smart linear-space algorithm
 //        NWSmart           global alignment using linear space
+//        AScore            global alignment for A-Score using linear space
 //        SWSmart           local alignment using linear space
 //     AlignSmartAffine     alignment w affine gap costs in linear space
 //        SWSmartAffine     local alignment w affine gap costs in linear space
+//  NWSmartTask             one sub-alignment of NWSmart.getMatch (fork/join)
+//  AScoreWavefront         the matrix of AScore in parallel tiles (fork/join)
 //  Traceback               traceback pointers
 //     Traceback2           traceback for simple gap costs
 //     Traceback3           traceback for affine gap costs
@@ -384,37 +390,183 @@ class NWSmart extends AlignSmart {
 	public int getV() 
 	{ return c[1][m]; }
 
-	public String[] getMatch() {
-		int v = getV();
-		if (n > 1 && m > 1) {
-			NWSmart al1, al2;
-			al1 = new NWSmart(sub, d, seq1.substring(0, u), seq2.substring(0, v));
-			al2 = new NWSmart(sub, d, seq1.substring(u),    seq2.substring(v));
-			String[] match1 = al1.getMatch();
-			String[] match2 = al2.getMatch();
-			String[] match = { match1[0] + match2[0], match1[1] + match2[1] };
-			return match;
-		} else {
-			NW al = new NW(sub, d, seq1, seq2);
-			return al.getMatch();
+	public String[] getMatch() 
+	{ return getMatch(sub, d, seq1, seq2, u, getV()); }
+
+	// The alignment of seq1 and seq2 which passes through (u, v): the two halves
+	// are aligned by NWSmartTask (in parallel if they are large) and written
+	// into two char buffers, so no string is concatenated.
+	static String[] getMatch(Substitution sub, int d, String seq1, String seq2, int u, int v) 
+	{ return getMatch(sub, d, seq1, seq2, u, v, NWSmartTask.FORK_CELLS); }
+
+	// The same, the halves of a matrix with at least forkCells cells are forked
+	static String[] getMatch(Substitution sub, int d, String seq1, String seq2, int u, int v, long forkCells) {
+		char[] sq1 = seq1.toCharArray(), sq2 = seq2.toCharArray();
+		int len = sq1.length + sq2.length;
+		char[] res1 = new char[len], res2 = new char[len];
+		len = new NWSmartTask(sub, d, sq1, 0, sq1.length, sq2, 0, sq2.length, u, v, 
+				res1, res2, 0, forkCells).invoke();
+		String[] res = { new String(res1, 0, len), new String(res2, 0, len) };
+		return res;
+	}
+
+	// The row v of seq2[j0..j0+m) where the best alignment with seq1[i0..i0+n)
+	// passes through row u = n/2 of seq1, the same as getV() of an NWSmart of
+	// the two substrings, but no substring or NWSmart is made.
+	static int getV(Substitution sub, int d, char[] seq1, int i0, int n, char[] seq2, int j0, int m) {
+		int u = n/2;
+		int[][] F = new int[2][m+1], c = new int[2][m+1];
+		int[][] score = sub.score;
+		for (int j=0; j<=m; j++)
+			F[1][j] = -d * j;
+		for (int i=1; i<=n; i++) {
+			swap01(F); swap01(c);
+			F[1][0] = -d * i;
+			int[] F0 = F[0], F1 = F[1], c0 = c[0], c1 = c[1];
+			int[] row = score[seq1[i0+i-1]];
+			for (int j=1; j<=m; j++) {
+				int s = row[seq2[j0+j-1]];
+				int val = max(F0[j-1]+s, F0[j]-d, F1[j-1]-d);
+				F1[j] = val;
+				if (i == u)
+					c1[j] = j;
+				else 
+					if (val == F0[j-1]+s)
+						c1[j] = c0[j-1];
+					else if (val == F0[j]-d)
+						c1[j] = c0[j];
+					else if (val == F1[j-1]-d)
+						c1[j] = c1[j-1];
+					else
+						throw new Error("NWSmart 1");
+			}
 		}
+		return c[1][m];
 	}
 
 	public int getScore() 
 	{ return F[1][m]; }
 }
 
+
+// Global alignment of seq1[i0..i0+n) and seq2[j0..j0+m) written into res1
+// and res2 from off. All the tasks share the two sequences and the two buffers.
+// It is the same as the recursion of the original NWSmart.getMatch: if both
+// ranges are longer than 1, the halves (seq1[i0..i0+u), seq2[j0..j0+v)) and
+// (seq1[i0+u..i0+n), seq2[j0+v..j0+m)) are aligned by two subtasks; otherwise
+// the alignment of NW is written by writeNW.
+// The alignment of the left half is at most u+v long, so the right half is
+// written from off+u+v and then moved right after the left one.
+// The result is the length of the alignment.
+
+class NWSmartTask extends RecursiveTask<Integer> {
+	private static final long serialVersionUID = 1L;
+	final static long FORK_CELLS = 1L << 19; // the halves of a smaller matrix are not forked
+
+	Substitution sub;
+	int d;
+	char[] seq1, seq2;
+	int i0, n, j0, m;             // the ranges of seq1 and seq2
+	int u, v;                     // the split point, u < 0 if it is not computed yet
+	char[] res1, res2;
+	int off;
+	long forkCells;               // the halves are forked if n*m >= forkCells
+
+	public NWSmartTask(Substitution sub, int d, char[] seq1, int i0, int n, char[] seq2, int j0, int m, 
+			int u, int v, char[] res1, char[] res2, int off, long forkCells) {
+		this.sub = sub; this.d = d;
+		this.seq1 = seq1; this.i0 = i0; this.n = n;
+		this.seq2 = seq2; this.j0 = j0; this.m = m;
+		this.u = u; this.v = v;
+		this.res1 = res1; this.res2 = res2;
+		this.off = off;
+		this.forkCells = forkCells;
+	}
+
+	protected Integer compute() {
+		if (n > 1 && m > 1) {
+			if (u < 0) {
+				u = n/2;
+				v = NWSmart.getV(sub, d, seq1, i0, n, seq2, j0, m);
+			}
+			NWSmartTask t1, t2;
+			t1 = new NWSmartTask(sub, d, seq1, i0, u, seq2, j0, v, -1, -1, res1, res2, off, forkCells);
+			t2 = new NWSmartTask(sub, d, seq1, i0+u, n-u, seq2, j0+v, m-v, -1, -1, res1, res2, off+u+v, forkCells);
+			int len1, len2;
+			if ((long)n * m >= forkCells) {
+				invokeAll(t1, t2);
+				len1 = t1.join(); len2 = t2.join();
+			} else {
+				len1 = t1.compute(); len2 = t2.compute();
+			}
+			if (len1 < u+v) {
+				System.arraycopy(res1, off+u+v, res1, off+len1, len2);
+				System.arraycopy(res2, off+u+v, res2, off+len1, len2);
+			}
+			return len1 + len2;
+		} else 
+			return writeNW();
+	}
+
+	// The alignment of NW (the same matrix and the same order of ties) for a
+	// range of length 0 or 1, so the matrix has at most 2 rows or 2 columns.
+	// The traceback is written backwards from off+n+m and then moved to off.
+	int writeNW() {
+		int[][] score = sub.score;
+		int w = m+1;
+		int[] F = new int[(n+1)*w];
+		for (int i=1; i<=n; i++)
+			F[i*w] = -d * i;
+		for (int j=1; j<=m; j++)
+			F[j] = -d * j;
+		for (int i=1; i<=n; i++)
+			for (int j=1; j<=m; j++) {
+				int s = score[seq1[i0+i-1]][seq2[j0+j-1]];
+				F[i*w+j] = Match2.max(F[(i-1)*w+j-1]+s, F[(i-1)*w+j]-d, F[i*w+j-1]-d);
+			}
+		int i = n, j = m, pos = off+n+m;
+		while (i > 0 || j > 0) {
+			pos--;
+			if (i > 0 && j > 0 && F[i*w+j] == F[(i-1)*w+j-1]+score[seq1[i0+i-1]][seq2[j0+j-1]]) {
+				res1[pos] = seq1[i0+i-1]; res2[pos] = seq2[j0+j-1];
+				i--; j--;
+			} else if (i > 0 && (j == 0 || F[i*w+j] == F[(i-1)*w+j]-d)) {
+				res1[pos] = seq1[i0+i-1]; res2[pos] = '-';
+				i--;
+			} else {
+				res1[pos] = '-'; res2[pos] = seq2[j0+j-1];
+				j--;
+			}
+		}
+		int len = off+n+m - pos;
+		if (pos > off) {
+			System.arraycopy(res1, pos, res1, off, len);
+			System.arraycopy(res2, pos, res2, off, len);
+		}
+		return len;
+	}
+}
+
 //Global alignment (simple gap costs, smart linear-space algorithm)
 
 class AScore extends AlignSmart {
 	int u;     // Halfway through seq1
 	int[][] c; // Best alignment from (0,0) to (i,j) passes through (u, c[i][j]) 
 
-	public AScore(Substitution sub, int d, String sq1, String sq2) {
+	public AScore(Substitution sub, int d, String sq1, String sq2) 
+	{ this(sub, d, sq1, sq2, AScoreWavefront.MIN_CELLS); }
+
+	// The matrix is computed in tiles if it has at least minTiledCells cells
+	AScore(Substitution sub, int d, String sq1, String sq2, long minTiledCells) {
 		super(sub, d, sq1, sq2);
 		int n = this.n, m = this.m;
 		u = n/2;
 		c = new int[2][m+1];
+		if ((long)n * m >= minTiledCells && n > 0 && m > 0) {
+			// Only F[1][m] and c[1][m] are set, they are the same as below
+			new AScoreWavefront(this).invoke();
+			return;
+		}
 		int[][] score = sub.score;
 		for (int j=0; j<=m; j++)
 			F[1][j] = 0;
@@ -447,32 +599,118 @@ class AScore extends AlignSmart {
 	public int getV() 
 	{ return c[1][m]; }
 
-	public String[] getMatch() {
-		int v = getV();
-		if (n > 1 && m > 1) {
-			NWSmart al1, al2;
-			al1 = new NWSmart(sub, d, seq1.substring(0, u), seq2.substring(0, v));
-			al2 = new NWSmart(sub, d, seq1.substring(u),    seq2.substring(v));
-			String[] match1 = al1.getMatch();
-			String[] match2 = al2.getMatch();
-			String[] match = { match1[0] + match2[0], match1[1] + match2[1] };
-			return match;
-		} else {
-			NW al = new NW(sub, d, seq1, seq2);
-			return al.getMatch();
-		}
-	}
+	public String[] getMatch() 
+	{ return NWSmart.getMatch(sub, d, seq1, seq2, u, getV()); }
 
 	public int getScore() 
 	{ return F[1][m]; }
 }
 
 
+// The matrix of AScore computed in tiles of TILE x TILE cells. The tiles on
+// one anti-diagonal do not depend on each other, so they are computed in
+// parallel, and the anti-diagonals one after another. Every cell is computed
+// by the same rule (and in the same order of ties) as in AScore, so the
+// score and the split point are exactly the same.
+// Only the boundaries between tiles are kept: colF/colC[j] is the last
+// column of the last finished tile in the band of rows of j, rowF/rowC[i] the
+// last row of the last finished tile in the band of columns of i, and
+// cornerF/cornerC[I][J] the cell (I*TILE, J*TILE).
+
+class AScoreWavefront extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	final static int TILE = 256;
+	final static long MIN_CELLS = 1L << 22;   // a smaller matrix is computed in one thread
+
+	AScore al;
+	int gap;                      // gap cost (0 in the last column)
+	int numI, numJ;               // number of tiles along seq1 and seq2
+	int[] colF, colC, rowF, rowC;
+	int[][] cornerF, cornerC;
+
+	public AScoreWavefront(AScore al) {
+		this.al = al;
+		int n = al.n, m = al.m;
+		gap = al.d;
+		numI = (n + TILE - 1) / TILE; numJ = (m + TILE - 1) / TILE;
+		colF = new int[m+1]; colC = new int[m+1];   // column 0 is all zero
+		rowF = new int[n+1]; rowC = new int[n+1];
+		for (int i=1; i<=n; i++)
+			rowF[i] = (i == n) ? 0 : -gap * i;
+		cornerF = new int[numI+1][numJ+1]; cornerC = new int[numI+1][numJ+1];
+		for (int I=1; I<=numI; I++)
+			cornerF[I][0] = rowF[Math.min(I * TILE, n)];
+	}
+
+	protected void compute() {
+		for (int k=0; k<numI+numJ-1; k++) {
+			int lo = Math.max(0, k-numJ+1), hi = Math.min(k, numI-1);
+			Tile[] tiles = new Tile[hi-lo+1];
+			for (int I=lo; I<=hi; I++)
+				tiles[I-lo] = new Tile(I, k-I);
+			invokeAll(tiles);
+		}
+		al.F[1][al.m] = cornerF[numI][numJ];
+		al.c[1][al.m] = cornerC[numI][numJ];
+	}
+
+	class Tile extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		int I, J;
+
+		Tile(int I, int J) 
+		{ this.I = I; this.J = J; }
+
+		protected void compute() {
+			int n = al.n, m = al.m, u = al.u;
+			int[][] score = al.sub.score;
+			String seq1 = al.seq1, seq2 = al.seq2;
+			int i0 = I * TILE, i1 = Math.min(i0 + TILE, n);
+			int j0 = J * TILE, j1 = Math.min(j0 + TILE, m);
+			int h = j1 - j0;
+			// prevF/prevC is column i-1 and curF/curC column i, index 0 is row j0
+			int[] prevF = new int[h+1], prevC = new int[h+1];
+			int[] curF = new int[h+1], curC = new int[h+1];
+			prevF[0] = cornerF[I][J]; prevC[0] = cornerC[I][J];
+			System.arraycopy(colF, j0+1, prevF, 1, h);
+			System.arraycopy(colC, j0+1, prevC, 1, h);
+			for (int i=i0+1; i<=i1; i++) {
+				int d = (i == n) ? 0 : gap;
+				int[] scorei = score[seq1.charAt(i-1)];
+				curF[0] = rowF[i]; curC[0] = rowC[i];
+				for (int k=1; k<=h; k++) {
+					int s = scorei[seq2.charAt(j0+k-1)];
+					int val = Match2.max(prevF[k-1]+s, prevF[k]-d, curF[k-1]-d);
+					curF[k] = val;
+					if (i == u)
+						curC[k] = j0 + k;
+					else 
+						if (val == prevF[k-1]+s)
+							curC[k] = prevC[k-1];
+						else if (val == prevF[k]-d)
+							curC[k] = prevC[k];
+						else if (val == curF[k-1]-d)
+							curC[k] = curC[k-1];
+						else
+							throw new Error("AScore 1");
+				}
+				rowF[i] = curF[h]; rowC[i] = curC[h];
+				int[] tmp = prevF; prevF = curF; curF = tmp;
+				tmp = prevC; prevC = curC; curC = tmp;
+			}
+			System.arraycopy(prevF, 1, colF, j0+1, h);
+			System.arraycopy(prevC, 1, colC, j0+1, h);
+			cornerF[I+1][J+1] = prevF[h]; cornerC[I+1][J+1] = prevC[h];
+		}
+	}
+}
+
+
 // Local alignment with the Smith-Waterman algorithm (simple gap
 // costs, smart linear space algorithm)
 
 class SWSmart extends AlignSmart {
-	Traceback2[][] start; // Best alignment ending at (i,j) begins at start[i][j]
+	long[][] start;       // Best alignment ending at (i,j) begins at start[i][j], packed by pack(i, j)
 	int maxval;           // Score of best alignment
 	int start1, start2;   // Best alignment begins at (start1, start2)
 	int end1, end2;       // Best alignment ends at (end1, end2)
@@ -481,40 +719,46 @@ class SWSmart extends AlignSmart {
 		super(sub, d, sq1, sq2);
 		int n = this.n, m = this.m;
 		int[][] score = sub.score;
-		start = new Traceback2[2][m+1];
+		start = new long[2][m+1];
 		maxval = NegInf;
 		// Initialize first column (i=0):
 		for (int j=0; j<=m; j++)
-			start[1][j] = new Traceback2(0, j);
+			start[1][j] = pack(0, j);
 		for (int i=1; i<=n; i++) {
 			swap01(F); swap01(start);
 			// F[1] represents (new) column i and F[0] represents (old) column i-1
+			int[] F0 = F[0], F1 = F[1];
+			long[] st0 = start[0], st1 = start[1];
+			int[] scorei = score[seq1.charAt(i-1)];
 			// Initialize first row (j=0):
-			start[1][0] = new Traceback2(i, 0);
+			st1[0] = pack(i, 0);
 			for (int j=1; j<=m; j++) {
-				int s = score[seq1.charAt(i-1)][seq2.charAt(j-1)];
-				int val = max(0, F[0][j-1]+s, F[0][j]-d, F[1][j-1]-d);
-				F[1][j] = val;
+				int s = scorei[seq2.charAt(j-1)];
+				int val = max(0, F0[j-1]+s, F0[j]-d, F1[j-1]-d);
+				F1[j] = val;
 				if (val == 0)           // Best alignment starts (and ends) here
-					start[1][j] = new Traceback2(i, j);
-				else if (val == F[0][j-1]+s)
-					start[1][j] = start[0][j-1];
-				else if (val == F[0][j]-d)
-					start[1][j] = start[0][j];
-				else if (val == F[1][j-1]-d)
-					start[1][j] = start[1][j-1];
+					st1[j] = pack(i, j);
+				else if (val == F0[j-1]+s)
+					st1[j] = st0[j-1];
+				else if (val == F0[j]-d)
+					st1[j] = st0[j];
+				else if (val == F1[j-1]-d)
+					st1[j] = st1[j-1];
 				else
 					throw new Error("SWSmart 1");
 				if (val > maxval) {
 					maxval = val;
-					Traceback2 sij = start[1][j];
-					start1 = sij.i; start2 = sij.j;
+					start1 = (int)(st1[j] >>> 32); start2 = (int)st1[j];
 					end1 = i; end2 = j;
 				}
 			}
 		}
 	}
 
+	// Pack the coordinates (i, j) into one long, i in the high 32 bits
+	static long pack(int i, int j) 
+	{ return ((long)i << 32) | j; }
+
 	public int getScore() 
 	{ return maxval; }
 
@@ -1,16 +1,49 @@
 
 public class Node {
-	String sequence;	//the bases of the est
+	CharSequence sequence;	//the bases of the est, a PackedSequence after the node is added to the graph
 	String name;	//ID of the est,currently it's the starting position of the node.
 	String comment; //comment to the est in the input est file
+	MappedEstFile source;	//the est file which the comment is read from, null if the comment is given.
+	long commentOffset;		//position of the comment in the est file
+	int commentLen;
+	D2Profile profile;	//precomputed k-mer information for D2, it is set when the node is added to the graph.
 	
 	public Node(String n, String c, String s) {
 		name = n;
 		comment = c;
 		sequence = s;
+		profile = null;
+		source = null;
+	}
+
+	/*
+	 * The name and the comment are not read from the est file until they are used.
+	 * @param offset, len position and length of the comment in the file.
+	 */
+	public Node(MappedEstFile f, long offset, int len, CharSequence s) {
+		name = null;
+		comment = null;
+		source = f;
+		commentOffset = offset;
+		commentLen = len;
+		sequence = s;
+		profile = null;
 	}
 	
-	public String getNodeStr() {
+	/*
+	 * move the sequence into the store, so the node only keeps a 2-bit packed view of it.
+	 */
+	public void pack(SequenceStore store) {
+		if (sequence instanceof PackedSequence) {	//it is loaded into the store directly
+			return;
+		}
+		sequence = store.getSeq(store.add(sequence));
+	}
+
+	/*
+	 * get sequence of the node without decoding it
+	 */
+	public CharSequence getNodeStr() {
 		return sequence;
 	}
 	
@@ -25,20 +58,48 @@ public class Node {
 	 * get ID of the node
 	 */
 	public String getName() {
+		if (name == null) {
+			readComment();
+		}
 		return name;
 	}
 
 	/*
-	 * get sequence of the node
+	 * get sequence of the node, it is decoded to a new string if the node is packed.
 	 */
 	public String getSeq() {
-		return sequence;
+		return sequence.toString();
 	}
 
 	/*
 	 * get sequence of the node
 	 */
 	public String getComment() {
+		if (comment == null) {
+			readComment();
+		}
 		return comment;
 	}
+
+	/*
+	 * read the comment from the est file, and the name is the second field of the comment split by '_'.
+	 */
+	private void readComment() {
+		String c = source.getHeader(commentOffset, commentLen);
+		int start = c.indexOf('_') + 1;
+		int end = c.indexOf('_', start);
+		name = c.substring(start, (end < 0) ? c.length() : end);
+		comment = c;
+	}
+
+	/*
+	 * get D2 profile of the node
+	 */
+	public D2Profile getProfile() {
+		return profile;
+	}
+
+	public void setProfile(D2Profile p) {
+		profile = p;
+	}
 }
@@ -56,30 +56,54 @@ public class OvlDistance {
 	 * If s1 is included in s2, the distance is INT_MIN.
 	 */
 	protected int[] getOVLDistance(String tS1, String tS2) {
-		String s1 = "";
-		String s2 = "";
+		return getOVLDistance(d2.createProfile(tS1), d2.createProfile(tS2));
+	}
+
+	/*
+	 * Same as getOVLDistance(String, String), but uses the precomputed D2 profiles of the two ests.
+	 */
+	protected int[] getOVLDistance(D2Profile tP1, D2Profile tP2) {
+		return getOVLDistance(tP1, tP2, -1);
+	}
+
+	/*
+	 * Same as above, but only a distance which is not bigger than maxDis is needed. An alignment is 
+	 * skipped if its distance must be bigger than maxDis (see "isFartherThan").
+	 * @param maxDis -1 means no alignment is skipped.
+	 * @return the same as above; or null if some alignment is skipped and the overlap distance must be 
+	 * bigger than maxDis (there is no inclusion either).
+	 */
+	protected int[] getOVLDistance(D2Profile tP1, D2Profile tP2, int maxDis) {
+		if (maxDis >= 0) {
+			maxDis = Math.max(Math.min(maxDis, alignment.alignmentThreshold), InclusionThreshold);
+		}
+		boolean skipped = false;	//true if some alignment is skipped
+		D2Profile p1 = null;
+		D2Profile p2 = null;
 		int flag = 1;	//1 - no switch for tS1 and tS2; -1 - switch.
 		/*
 		 * put the shorter string to s1 and the longer one to s2 in 
 		 * order to identify inclusion. Now we just need to identify the
 		 * situation when s1 is included in s2. 
 		 */
-		if (tS1.length() > tS2.length()) {
-			s1 = tS2;
-			s2 = tS1;
+		if (tP1.getLen() > tP2.getLen()) {
+			p1 = tP2;
+			p2 = tP1;
 			flag = -1; //tS1 and tS2 are switched
 		} else {
-			s1 = tS1;
-			s2 = tS2;
+			p1 = tP1;
+			p2 = tP2;
 		}
+		CharSequence s1 = p1.getSeq();
+		CharSequence s2 = p2.getSeq();
 
 		int[] returnValues = new int[2];
 		
-		BestWindowMatches best = d2.matchEndWindows(s1, s2);
-		int[] tLeftPos = best.bestLeftStart;
-		int[] tRightPos = best.bestRightStart;
-		int[] leftPos = reducePos(tLeftPos);
-		int[] rightPos = reducePos(tRightPos);
+		BestWindowMatches best = d2.matchEndWindows(p1, p2);
+		int[] leftPos = best.bestLeftStart;
+		int[] rightPos = best.bestRightStart;
+		int numLeftPos = numReducedPos(best.numBestLeftWindows);
+		int numRightPos = numReducedPos(best.numBestRightWindows);
 		
 		int disLeft = INT_MAX;
 		int disRight = INT_MAX;
@@ -88,15 +112,23 @@ public class OvlDistance {
 		int lLenOverlap = 0;
 		int rLenOverlap = 0;
 
-		for (int i=0; i<leftPos.length; i++) {
-			int lPos = leftPos[i];
+		for (int i=0; i<numLeftPos; i++) {
+			int lPos = reducedPos(leftPos, best.numBestLeftWindows, i);
 			int tLenOverlap = s2.length() - lPos; 
 			int tmpDis = INT_MAX;
 			if (tLenOverlap > s1.length()) {	//if s1 is included in s2
-				tmpDis = alignment.getDistance(s1.substring(0, s1.length()), s2.substring(lPos, lPos+s1.length()));
+				if (isFartherThan(p1, 0, p2, lPos, s1.length(), maxDis)) {
+					skipped = true;
+				} else {
+					tmpDis = alignment.getDistance(s1.toString(), s2.subSequence(lPos, lPos+s1.length()).toString());
+				}
 				tLenOverlap = s1.length();
 			} else {
-				tmpDis = alignment.getDistance(s1.substring(0, tLenOverlap), s2.substring(lPos));
+				if (isFartherThan(p1, 0, p2, lPos, tLenOverlap, maxDis)) {
+					skipped = true;
+				} else {
+					tmpDis = alignment.getDistance(s1.subSequence(0, tLenOverlap).toString(), s2.subSequence(lPos, s2.length()).toString());
+				}
 			}
 			if (tmpDis < disLeft){ // && (tLenOverlap > lLenOverlap), do we need to use two conditions or just one?
 				disLeft = tmpDis;
@@ -104,17 +136,25 @@ public class OvlDistance {
 			}
 		}
 
-		for (int i=0; i<rightPos.length; i++) {
-			int rPos = rightPos[i];
+		for (int i=0; i<numRightPos; i++) {
+			int rPos = reducedPos(rightPos, best.numBestRightWindows, i);
 			int tLenOverlap = rPos + windowSize; 
 			int lenInS1 = s1.length()-tLenOverlap;
 
 			int tmpDis = INT_MAX;
 			if (lenInS1 < 0) {	//if s1 is included in s2
-				tmpDis = alignment.getDistance(s1.substring(0), s2.substring(tLenOverlap-s1.length(), tLenOverlap));
+				if (isFartherThan(p1, 0, p2, tLenOverlap-s1.length(), s1.length(), maxDis)) {
+					skipped = true;
+				} else {
+					tmpDis = alignment.getDistance(s1.toString(), s2.subSequence(tLenOverlap-s1.length(), tLenOverlap).toString());
+				}
 				tLenOverlap = s1.length();
 			} else {
-				tmpDis = alignment.getDistance(s1.substring(lenInS1), s2.substring(0, tLenOverlap));
+				if (isFartherThan(p1, lenInS1, p2, 0, tLenOverlap, maxDis)) {
+					skipped = true;
+				} else {
+					tmpDis = alignment.getDistance(s1.subSequence(lenInS1, s1.length()).toString(), s2.subSequence(0, tLenOverlap).toString());
+				}
 			}
 			if (tmpDis < disRight) {// && (tLenOverlap > rLenOverlap). do we need to use two conditions or just one?
 				disRight = tmpDis;
@@ -123,6 +163,14 @@ public class OvlDistance {
 		}
 
 
+		/*
+		 * a skipped alignment has a distance bigger than maxDis. If the smaller distance is not bigger than
+		 * maxDis, it is still the smaller one and the result is the same as without skipping.
+		 */
+		if (skipped && (Math.min(disLeft, disRight) > maxDis)) {
+			return null;
+		}
+
 		// compare disLeft and disRight, select the one with smaller value.
 		if (disLeft < disRight) {
 			ovlDis = -1 * disLeft * flag;	//minus represents that s2 is to the left of s1
@@ -150,16 +198,41 @@ public class OvlDistance {
 		return returnValues;
 	}
 
-	private int[] reducePos(int[] input) {
-		int len = input.length;
-		if ((len <= 1)) {
-			return input;
-		} else{
-			int[] ret = new int[2];
-			ret[0] = input[0];
-			ret[1] = input[len-1];
-			return ret;
+	/*
+	 * Judge, without the alignment, if the distance of s1[start1, start1+len) and s2[start2, start2+len) 
+	 * from Alignment.getDistance must be bigger than maxDis.
+	 * 
+	 * With the scores in Alignment.java (match 1, mismatch -2, gap -3) every edit loses at least 3 from 
+	 * the score, so a distance <= maxDis means less than len*(maxDis+1)/300 edits (maxDis+2 is used in 
+	 * case of rounding errors). By the q-gram lemma two strings of length len with e edits share at 
+	 * least len-k+1-k*e words of length k.
+	 * @param maxDis -1 means the distance is always needed.
+	 */
+	private boolean isFartherThan(D2Profile p1, int start1, D2Profile p2, int start2, int len, int maxDis) {
+		if (maxDis < 0) {
+			return false;
+		}
+		int shared = d2.countSharedWords(p1, start1, p2, start2, len);
+		if (shared < 0) {	//the words with N are not counted, so the lemma can not be used
+			return false;
 		}
+		long k = d2.getd2WordSize();
+		return 300 * (len - k + 1 - shared) >= k * len * (maxDis + 2);
+	}
+
+	/*
+	 * only the first and the last of the best windows are aligned.
+	 * @param num the number of the best windows.
+	 */
+	private int numReducedPos(int num) {
+		return Math.min(num, 2);
+	}
+
+	/*
+	 * get the i-th aligned window without copying the positions, i is 0 or 1.
+	 */
+	private int reducedPos(int[] input, int num, int i) {
+		return (i == 0) ? input[0] : input[num-1];
 	}
 	
 	/*
@@ -167,11 +240,21 @@ public class OvlDistance {
 	 * @return true or false
 	 */
 	protected boolean checkInclusion(String s1, String s2) {
-		BestWindowMatches best = d2.matchEndWindows(s1, s2);
-		int[] tLeftPos = best.bestLeftStart;
-		int[] tRightPos = best.bestRightStart;
-		int[] leftPos = reducePos(tLeftPos);
-		int[] rightPos = reducePos(tRightPos);
+		return checkInclusion(d2.createProfile(s1), d2.createProfile(s2));
+	}
+
+	/*
+	 * judge if p1 is included in p2 by using their precomputed D2 profiles.
+	 * @return true or false
+	 */
+	protected boolean checkInclusion(D2Profile p1, D2Profile p2) {
+		CharSequence s1 = p1.getSeq();
+		CharSequence s2 = p2.getSeq();
+		BestWindowMatches best = d2.matchEndWindows(p1, p2);
+		int[] leftPos = best.bestLeftStart;
+		int[] rightPos = best.bestRightStart;
+		int numLeftPos = numReducedPos(best.numBestLeftWindows);
+		int numRightPos = numReducedPos(best.numBestRightWindows);
 		int disLeft = INT_MAX;
 		int disRight = INT_MAX;
 		int lenOverlap = 0;
@@ -179,15 +262,15 @@ public class OvlDistance {
 		int rLenOverlap = 0;
 
 		// if all leftPos[i] are -1, disLeft will be kept to be INT_MAX.
-		for (int i=0; i<leftPos.length; i++) {
-			int lPos = leftPos[i];
+		for (int i=0; i<numLeftPos; i++) {
+			int lPos = reducedPos(leftPos, best.numBestLeftWindows, i);
 			int tLenOverlap = s2.length() - lPos; 
 			int tmpDis = INT_MAX;
 			if (tLenOverlap > s1.length()) {	//if s1 is included in s2
-				tmpDis = alignment.getDistance(s1.substring(0, s1.length()), s2.substring(lPos, lPos+s1.length()));
+				tmpDis = alignment.getDistance(s1.toString(), s2.subSequence(lPos, lPos+s1.length()).toString());
 				tLenOverlap = s1.length();
 			} else {
-				tmpDis = alignment.getDistance(s1.substring(0, tLenOverlap), s2.substring(lPos));
+				tmpDis = alignment.getDistance(s1.subSequence(0, tLenOverlap).toString(), s2.subSequence(lPos, s2.length()).toString());
 			}
 			if (tmpDis < disLeft){ // && (tLenOverlap > lLenOverlap), do we need to use two conditions or just one?
 				disLeft = tmpDis;
@@ -196,17 +279,17 @@ public class OvlDistance {
 		}
 
 		// if all rightPos[i] are -1, disRight will be kept to be INT_MAX.
-		for (int i=0; i<rightPos.length; i++) {
-			int rPos = rightPos[i];
+		for (int i=0; i<numRightPos; i++) {
+			int rPos = reducedPos(rightPos, best.numBestRightWindows, i);
 			int tLenOverlap = rPos + windowSize; 
 			int lenInS1 = s1.length()-tLenOverlap;
 
 			int tmpDis = INT_MAX;
 			if (lenInS1 < 0) {	//if s1 is included in s2
-				tmpDis = alignment.getDistance(s1.substring(0), s2.substring(tLenOverlap-s1.length(), tLenOverlap));
+				tmpDis = alignment.getDistance(s1.toString(), s2.subSequence(tLenOverlap-s1.length(), tLenOverlap).toString());
 				tLenOverlap = s1.length();
 			} else {
-				tmpDis = alignment.getDistance(s1.substring(lenInS1), s2.substring(0, tLenOverlap));
+				tmpDis = alignment.getDistance(s1.subSequence(lenInS1, s1.length()).toString(), s2.subSequence(0, tLenOverlap).toString());
 			}
 			if (tmpDis < disRight) {// && (tLenOverlap > rLenOverlap). do we need to use two conditions or just one?
 				disRight = tmpDis;
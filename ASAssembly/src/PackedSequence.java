@@ -0,0 +1,57 @@
+/*
+ * A read-only view of a part of a SequenceStore. It is used instead of String for the sequences of the
+ * nodes, so the bases are kept in 2 bits and only decoded when they are read.
+ */
+public class PackedSequence implements CharSequence {
+	private SequenceStore store;
+	private long start;	//position of the first base in the store
+	private int len;
+
+	public PackedSequence(SequenceStore s, long st, int l) {
+		store = s;
+		start = st;
+		len = l;
+	}
+
+	public int length() {
+		return len;
+	}
+
+	public char charAt(int index) {
+		if ((index < 0) || (index >= len)) {
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + len);
+		}
+		return store.charAt(start + index);
+	}
+
+	/*
+	 * get the 2-bit code of the base, -1 if it is not A/C/G/T.
+	 */
+	public int getCode(int index) {
+		if ((index < 0) || (index >= len)) {
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + len);
+		}
+		return store.getCode(start + index);
+	}
+
+	/*
+	 * the returned sequence is also a view, nothing is copied.
+	 */
+	public CharSequence subSequence(int st, int end) {
+		if ((st < 0) || (end > len) || (st > end)) {
+			throw new IndexOutOfBoundsException("start: " + st + ", end: " + end + ", length: " + len);
+		}
+		return new PackedSequence(store, start + st, end - st);
+	}
+
+	/*
+	 * decode the bases into a new string.
+	 */
+	public String toString() {
+		char[] ret = new char[len];
+		for (int i=0; i<len; i++) {
+			ret[i] = store.charAt(start + i);
+		}
+		return new String(ret);
+	}
+}
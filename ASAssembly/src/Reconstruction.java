@@ -11,9 +11,7 @@ import java.util.TreeSet;
 
 import com.mhhe.clrs2e.MergeSort;
 import com.mhhe.clrs2e.Prim;
-import com.mhhe.clrs2e.Vertex;
 import com.mhhe.clrs2e.WeightedAdjacencyListGraph;
-import com.mhhe.clrs2e.WeightedEdgeIterator;
 
 
 public class Reconstruction {
@@ -242,7 +240,7 @@ public class Reconstruction {
 			}
 		}
 
-		WeightedAdjacencyListGraph primMST = constructMinTree(g.graphNodes.size(), dGraph); //the first param is the total number of ESTs.
+		CSRGraph primMST = constructMinTree(g.graphNodes.size(), dGraph); //the first param is the total number of ESTs.
 
 		//put leftEnd node to index 0 in array sPos to be consistent with dGraph and primMST
 		sPos[leftEnd] = sPos[0];
@@ -386,12 +384,12 @@ public class Reconstruction {
 		}
 		
 		while (true) {
-			String s1 = allLeftEnds.get(0).seq;
+			D2Profile p1 = g.getProfileOfNode(allLeftEnds.get(0).index);
 			ArrayList<LeftEnd> includedEnds = new ArrayList<LeftEnd>();
 			includedEnds.add(allLeftEnds.get(0));
 			ArrayList<LeftEnd> excludedEnds = new ArrayList<LeftEnd>();
 			for (int i=1; i<allLeftEnds.size(); i++) {
-				boolean b = g.ovl.checkInclusion(allLeftEnds.get(i).seq, s1); //if resultArray[i].firstEst is included in s1
+				boolean b = g.ovl.checkInclusion(g.getProfileOfNode(allLeftEnds.get(i).index), p1); //if resultArray[i].firstEst is included in s1
 				if (b) {
 					includedEnds.add(allLeftEnds.get(i));
 				} else {
@@ -959,7 +957,7 @@ public class Reconstruction {
 	 *  @param g a directed graph, the second dimension has three elements:
 	 *  	index of starting node, index of ending node, weight between them.
 	 */
-	private WeightedAdjacencyListGraph constructMinTree(int nOfNodes, int[][] g) {
+	private CSRGraph constructMinTree(int nOfNodes, int[][] g) {
 		// Make a directed graph.
 		WeightedAdjacencyListGraph dGraph =
 		    new WeightedAdjacencyListGraph(nOfNodes, true);
@@ -972,7 +970,7 @@ public class Reconstruction {
 			}
 		}
 		WeightedAdjacencyListGraph mst = (new Prim()).computeMST(dGraph);
-		return mst;
+		return CSRGraph.fromAdjacencyList(mst);
 	}
 
 	
@@ -980,12 +978,9 @@ public class Reconstruction {
 	 * Calculate starting positions for each node. 
 	 */
 	
-	private void getStartPos(int parentNode, int leftEnd, WeightedAdjacencyListGraph tree, int[][] d) {
-		WeightedEdgeIterator ite = (WeightedEdgeIterator) tree.edgeIterator(parentNode);
-		while (ite.hasNext()) {
-			Vertex v = (Vertex) ite.next();
-			
-			int index = v.getIndex();
+	private void getStartPos(int parentNode, int leftEnd, CSRGraph tree, int[][] d) {
+		for (int k=tree.begin(parentNode); k<tree.end(parentNode); k++) {
+			int index = tree.target(k);
 			
 			int overlapLen = 0;
 			for (int i=0; i<d.length; i++) {
@@ -1010,12 +1005,9 @@ public class Reconstruction {
 	 * Used for debugging. 
 	 */
 	
-	private void getStartPosDebug(int parentNode, int leftEnd, WeightedAdjacencyListGraph tree, int[][] d) {
-		WeightedEdgeIterator ite = (WeightedEdgeIterator) tree.edgeIterator(parentNode);
-		while (ite.hasNext()) {
-			Vertex v = (Vertex) ite.next();
-			
-			int index = v.getIndex();
+	private void getStartPosDebug(int parentNode, int leftEnd, CSRGraph tree, int[][] d) {
+		for (int k=tree.begin(parentNode); k<tree.end(parentNode); k++) {
+			int index = tree.target(k);
 			
 			int overlapLen = 0;
 			for (int i=0; i<d.length; i++) {
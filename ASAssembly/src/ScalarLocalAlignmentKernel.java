@@ -0,0 +1,48 @@
+import java.util.Arrays;
+
+/*
+ * The scalar first pass of Alignment.getLocalAlignment, the matrix is calculated row by row in one array.
+ * It is used when the vector kernel is not wanted or can not be loaded (see "loadVectorKernel" in 
+ * Alignment.java).
+ */
+class ScalarLocalAlignmentKernel implements LocalAlignmentKernel {
+	private static final int CHECKPOINT_ROWS = Alignment.CHECKPOINT_ROWS;
+
+	public void forwardPass(AlignWorkspace w, int[] max) {
+		byte[] b1 = w.seq1;
+		byte[] b2 = w.seq2;
+		int n1 = w.len1;
+		int n2 = w.len2;
+		int width = n2 + 1;
+		int[] row = w.prev;
+		int[] checkpoints = w.checkpoints;
+		
+		Arrays.fill(row, 0, width, 0);
+		Arrays.fill(checkpoints, 0, width, 0);
+		int maxScore = 0;
+		int maxRow = 0;
+		int maxCol = 0;
+		for (int r=1; r<=n1; r++) {
+			byte a = b1[r-1];
+			int diag = 0;
+			int left = 0;
+			for (int c=1; c<=n2; c++) {
+				int up = row[c];
+				left = Alignment.localCell(left, diag, up, a, b2[c-1]);
+				row[c] = left;
+				diag = up;
+				if (left > maxScore) {
+					maxScore = left;
+					maxRow = r;
+					maxCol = c;
+				}
+			}
+			if (r % CHECKPOINT_ROWS == 0) {
+				System.arraycopy(row, 0, checkpoints, (r / CHECKPOINT_ROWS) * width, width);
+			}
+		}
+		max[0] = maxScore;
+		max[1] = maxRow;
+		max[2] = maxCol;
+	}
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+/*
+ * A store of all the est sequences with 2 bits for each base (A-0, C-1, G-2, T-3).
+ * All the sequences are put one after another into one long array, 32 bases in each long, and
+ * offsets[i] is the position of the first base of sequence i. The bases are upper-cased when they are
+ * added, the same as the mapped loader in MappedEstFile.java does. A base which is not one of A/C/G/T
+ * is marked in nMask and decoded as 'N'; the rare characters other than 'N' (e.g. IUPAC codes) are
+ * kept in otherPos and otherChars, so a sequence is decoded to the upper-cased string which is added.
+ *
+ * Sequences are only added when the est file is read. After that the store is read-only and can be
+ * read by several threads at the same time.
+ */
+public class SequenceStore {
+	long[] packed;	//2-bit codes of the bases, base k is in bits 2*(k%32) and 2*(k%32)+1 of packed[k/32]
+	long[] nMask;	//bit k%64 of nMask[k/64] is set if base k is not A/C/G/T
+	long[] offsets;	//sequence i is from base offsets[i] to offsets[i+1]-1
+	int size;		//number of sequences
+	int curLen;		//number of bases of the sequence which is being added
+	long[] otherPos;	//positions of the masked bases which are not 'N', in ascending order
+	byte[] otherChars;	//otherChars[i] is the character at otherPos[i]
+	int numOthers;
+
+	public SequenceStore() {
+		packed = new long[16];
+		nMask = new long[8];
+		offsets = new long[16];
+		offsets[0] = 0;
+		size = 0;
+		curLen = 0;
+		otherPos = new long[0];
+		otherChars = new byte[0];
+		numOthers = 0;
+	}
+
+	/*
+	 * add a sequence to the end of the store.
+	 * @return the index of the sequence in the store.
+	 */
+	public int add(CharSequence s) {
+		for (int i=0; i<s.length(); i++) {
+			append(Character.toUpperCase(s.charAt(i)));
+		}
+		return endSeq();
+	}
+
+	/*
+	 * append one base to the sequence which is being added. A sequence can be streamed into the store
+	 * base by base with "append" and finished by "endSeq", so it never needs to be a string.
+	 */
+	public void append(char c) {
+		long k = offsets[size] + curLen;
+		ensureCapacity(k + 1);
+		int code = encodeBase(c);
+		if (code < 0) {
+			nMask[(int) (k >>> 6)] |= 1L << (k & 63);
+			if (c != 'N') {
+				addOther(k, c);
+			}
+		} else {
+			packed[(int) (k >>> 5)] |= ((long) code) << ((k & 31) << 1);
+		}
+		curLen++;
+	}
+
+	/*
+	 * finish the sequence which is being added.
+	 * @return the index of the sequence in the store.
+	 */
+	public int endSeq() {
+		ensureNumOfSeqs(size + 1);
+		offsets[size+1] = offsets[size] + curLen;
+		curLen = 0;
+		size++;
+		return size - 1;
+	}
+
+	/*
+	 * add all the sequences of another store to the end of this store. The packed bases are copied
+	 * word by word, so the bases are not encoded again.
+	 * @return the index of the first added sequence in this store.
+	 */
+	public int addAll(SequenceStore o) {
+		long base = offsets[size];
+		long num = o.offsets[o.size];
+		ensureCapacity(base + num);
+		copyBits(o.packed, packed, base << 1, num << 1);
+		copyBits(o.nMask, nMask, base, num);
+		for (int i=0; i<o.numOthers; i++) {	//they are after all the bases of this store, so they stay sorted
+			addOther(base + o.otherPos[i], (char) (o.otherChars[i] & 0xff));
+		}
+		ensureNumOfSeqs(size + o.size);
+		for (int i=1; i<=o.size; i++) {
+			offsets[size+i] = base + o.offsets[i];
+		}
+		int first = size;
+		size += o.size;
+		return first;
+	}
+
+	/*
+	 * OR the first numBits bits of src into dst from bit dstBit. The bits of src after numBits must be zero.
+	 */
+	private static void copyBits(long[] src, long[] dst, long dstBit, long numBits) {
+		int shift = (int) (dstBit & 63);
+		int d = (int) (dstBit >>> 6);
+		int numWords = (int) ((numBits + 63) >>> 6);
+		for (int i=0; i<numWords; i++) {
+			long w = src[i];
+			dst[d+i] |= w << shift;
+			if ((shift != 0) && ((w >>> (64 - shift)) != 0)) {
+				dst[d+i+1] |= w >>> (64 - shift);
+			}
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/*
+	 * get the length of sequence i.
+	 */
+	public int getLen(int i) {
+		return (int) (offsets[i+1] - offsets[i]);
+	}
+
+	/*
+	 * get a view of sequence i, the bases are not copied.
+	 */
+	public PackedSequence getSeq(int i) {
+		return new PackedSequence(this, offsets[i], getLen(i));
+	}
+
+	/*
+	 * get the 2-bit code of the base at position k of the store.
+	 * @return the code, -1 if the base is not A/C/G/T.
+	 */
+	int getCode(long k) {
+		if ((nMask[(int) (k >>> 6)] & (1L << (k & 63))) != 0) {
+			return -1;
+		}
+		return (int) (packed[(int) (k >>> 5)] >>> ((k & 31) << 1)) & 3;
+	}
+
+	/*
+	 * get the character of the base at position k of the store.
+	 */
+	char charAt(long k) {
+		int code = getCode(k);
+		if (code >= 0) {
+			return BASES[code];
+		}
+		if (numOthers == 0) {
+			return 'N';
+		}
+		int i = Arrays.binarySearch(otherPos, 0, numOthers, k);
+		return (i < 0) ? 'N' : (char) (otherChars[i] & 0xff);
+	}
+
+	/*
+	 * keep the character of the masked base at position k, which must be after all the kept ones.
+	 * A character which does not fit into one byte is decoded as 'N'.
+	 */
+	private void addOther(long k, char c) {
+		if (c > 0xff) {
+			return;
+		}
+		if (numOthers == otherPos.length) {
+			int len = Math.max(16, otherPos.length * 2);
+			otherPos = Arrays.copyOf(otherPos, len);
+			otherChars = Arrays.copyOf(otherChars, len);
+		}
+		otherPos[numOthers] = k;
+		otherChars[numOthers] = (byte) c;
+		numOthers++;
+	}
+
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+	private static int encodeBase(char c) {
+		switch (c) {
+		case 'A' : return 0;
+		case 'C' : return 1;
+		case 'G' : return 2;
+		case 'T' : return 3;
+		}
+		return -1;
+	}
+
+	/*
+	 * make sure the offsets can hold "num" sequences.
+	 */
+	private void ensureNumOfSeqs(int num) {
+		if (num + 1 > offsets.length) {
+			long[] tmp = new long[Math.max(num + 1, offsets.length * 2)];
+			System.arraycopy(offsets, 0, tmp, 0, offsets.length);
+			offsets = tmp;
+		}
+	}
+
+	/*
+	 * make sure the store can hold "numBases" bases. The arrays are doubled when they are full.
+	 */
+	private void ensureCapacity(long numBases) {
+		int lenPacked = (int) ((numBases + 31) >>> 5);
+		if (lenPacked > packed.length) {
+			long[] tmp = new long[Math.max(lenPacked, packed.length * 2)];
+			System.arraycopy(packed, 0, tmp, 0, packed.length);
+			packed = tmp;
+		}
+		int lenMask = (int) ((numBases + 63) >>> 6);
+		if (lenMask > nMask.length) {
+			long[] tmp = new long[Math.max(lenMask, nMask.length * 2)];
+			System.arraycopy(nMask, 0, tmp, 0, nMask.length);
+			nMask = tmp;
+		}
+	}
+}
@@ -3,6 +3,11 @@
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class SixTuplesGeneration {
@@ -20,10 +25,12 @@ public class SixTuplesGeneration {
 	 * the sixth is the distance with + or -.
 	 */
 	ArrayList<SixTuple> alignArray;
+	int numOfThreads;	//number of threads to check the ends, 1 means sequential.
 	
 	public SixTuplesGeneration(Properties props, Graph graph, InclusionNodes inc) {
 		g = graph;
 		incNodes = inc;
+		numOfThreads = Integer.parseInt(props.getProperty("NumOfThreads", "1"));
 		alignArray = null;
 		leftMostNodes = new ArrayList<SixTuple> ();
 		init();
@@ -80,30 +87,32 @@ public class SixTuplesGeneration {
 		System.out.println("The number of original left ends is " + numOfLeftMostNodes);
 		System.out.println("The number of original right ends is " + rightMostNodes.size());
 		if (numOfLeftMostNodes > 1) {
-			for (int i=0; i<leftMostNodes.size(); i++) {
-				SixTuple curTuple = leftMostNodes.get(i);
+			new TuplePass() {
+				void process(SixTuple curTuple, TupleOrder order, InclusionNodes found) {
+					int cNode = curTuple.curNode;
+					SixTuple lNode = g.get2CloseNodesFromGrand(cNode, curTuple, order, found);
+					curTuple.leftNode = lNode.leftNode;
+					curTuple.lOvlLen = lNode.lOvlLen;	//overlap length
+					curTuple.lDis = lNode.lDis;	//distance
+					if (curTuple.rDis > lNode.rDis) { //get a smaller distance
+						curTuple.rightNode = lNode.rightNode;
+						curTuple.rOvlLen = lNode.rOvlLen;
+						curTuple.rDis = lNode.rDis;
+					}
+				}
+			}.run(leftMostNodes);
+		} 
+		new TuplePass() {
+			void process(SixTuple curTuple, TupleOrder order, InclusionNodes found) {
 				int cNode = curTuple.curNode;
-				SixTuple lNode = g.get2CloseNodesFromGrand(cNode, curTuple);
-				curTuple.leftNode = lNode.leftNode;
-				curTuple.lOvlLen = lNode.lOvlLen;	//overlap length
-				curTuple.lDis = lNode.lDis;	//distance
-				if (curTuple.rDis > lNode.rDis) { //get a smaller distance
+				SixTuple lNode = g.get2CloseNodesFromGrand(cNode, curTuple, order, found);
+				if (lNode.rightNode != -1) {
 					curTuple.rightNode = lNode.rightNode;
 					curTuple.rOvlLen = lNode.rOvlLen;
 					curTuple.rDis = lNode.rDis;
 				}
 			}
-		} 
-		for (int i=0; i<rightMostNodes.size(); i++) {
-			SixTuple curTuple = rightMostNodes.get(i);
-			int cNode = curTuple.curNode;
-			SixTuple lNode = g.get2CloseNodesFromGrand(cNode, curTuple);
-			if (lNode.rightNode != -1) {
-				curTuple.rightNode = lNode.rightNode;
-				curTuple.rOvlLen = lNode.rOvlLen;
-				curTuple.rDis = lNode.rDis;
-			}
-		}
+		}.run(rightMostNodes);
 		
 		leftMostNodes.clear();
 		rightMostNodes.clear();
@@ -124,29 +133,31 @@ public class SixTuplesGeneration {
 		 * makes six-tuple[0] != -1 or until the level we specified in the property file, then return the six-tuple.
 		 * If we fail to find any node, we consider it a real left end.
 		 */
-		for (int i=0; i<leftMostNodes.size(); i++) {
-			SixTuple curTuple = leftMostNodes.get(i);
-			int tEnd = curTuple.curNode; //index of the node
-			SixTuple tmpTuple = g.checkLeftEndFromMST(tEnd, curTuple);
-			if (tmpTuple != null) {
-				curTuple.leftNode = tmpTuple.leftNode;
-				curTuple.lOvlLen = tmpTuple.lOvlLen;	//overlap length
-				curTuple.lDis = tmpTuple.lDis;	//distance
-				curTuple.rightNode = tmpTuple.rightNode;
-				curTuple.rOvlLen = tmpTuple.rOvlLen;
-				curTuple.rDis = tmpTuple.rDis;
+		new TuplePass() {
+			void process(SixTuple curTuple, TupleOrder order, InclusionNodes found) {
+				int tEnd = curTuple.curNode; //index of the node
+				SixTuple tmpTuple = g.checkLeftEndFromMST(tEnd, curTuple, order, found);
+				if (tmpTuple != null) {
+					curTuple.leftNode = tmpTuple.leftNode;
+					curTuple.lOvlLen = tmpTuple.lOvlLen;	//overlap length
+					curTuple.lDis = tmpTuple.lDis;	//distance
+					curTuple.rightNode = tmpTuple.rightNode;
+					curTuple.rOvlLen = tmpTuple.rOvlLen;
+					curTuple.rDis = tmpTuple.rDis;
+				}
 			}
-		}
-		for (int i=0; i<rightMostNodes.size(); i++) {
-			SixTuple curTuple = rightMostNodes.get(i);
-			int tEnd = curTuple.curNode; //index of the node
-			SixTuple tmpTuple = g.checkRightEndFromMST(tEnd, curTuple);
-			if (tmpTuple != null) {
-				curTuple.rightNode = tmpTuple.rightNode;
-				curTuple.rOvlLen = tmpTuple.rOvlLen;
-				curTuple.rDis = tmpTuple.rDis;
+		}.run(leftMostNodes);
+		new TuplePass() {
+			void process(SixTuple curTuple, TupleOrder order, InclusionNodes found) {
+				int tEnd = curTuple.curNode; //index of the node
+				SixTuple tmpTuple = g.checkRightEndFromMST(tEnd, curTuple, order, found);
+				if (tmpTuple != null) {
+					curTuple.rightNode = tmpTuple.rightNode;
+					curTuple.rOvlLen = tmpTuple.rOvlLen;
+					curTuple.rDis = tmpTuple.rDis;
+				}
 			}
-		}
+		}.run(rightMostNodes);
 		
 		leftMostNodes.clear();
 		rightMostNodes.clear();
@@ -241,5 +252,65 @@ public class SixTuplesGeneration {
 		System.out.println("There are " + rightMostNodes.size() + " right-most nodes after processing false left ends.");
 	}
 
+	/*
+	 * One pass of processAlignArray over a list of six-tuples. "process" checks one tuple and only changes 
+	 * that tuple, and the inclusion pairs which are found are put into "found".
+	 * 
+	 * If numOfThreads > 1, the tuples are processed by several threads. They are started in the order 
+	 * of the list, and the inclusion pairs of each tuple are kept in its own InclusionNodes and appended 
+	 * to incNodes in the order of the list at the end, so the results are the same as processing them one by one.
+	 */
+	abstract class TuplePass {
+		abstract void process(SixTuple curTuple, TupleOrder order, InclusionNodes found);
+
+		void run(final ArrayList<SixTuple> tuples) {
+			if (numOfThreads <= 1) {
+				for (int i=0; i<tuples.size(); i++) {
+					process(tuples.get(i), null, incNodes);
+				}
+				return;
+			}
+
+			final TupleOrder order = new TupleOrder(tuples, g.getSizeofGraph());
+			final InclusionNodes[] found = new InclusionNodes[tuples.size()];
+			final AtomicInteger next = new AtomicInteger(0);	//position of the next tuple to be started
+			Runnable worker = new Runnable() {
+				public void run() {
+					int i = next.getAndIncrement();
+					while (i < tuples.size()) {
+						found[i] = new InclusionNodes();
+						try {
+							process(tuples.get(i), order, found[i]);
+						} finally {
+							order.finish(i);	//release the tuples which wait for it even if it fails
+						}
+						i = next.getAndIncrement();
+					}
+				}
+			};
+
+			ExecutorService pool = Executors.newFixedThreadPool(numOfThreads);
+			try {
+				ArrayList<Future<?>> results = new ArrayList<Future<?>> ();
+				for (int i=0; i<numOfThreads; i++) {
+					results.add(pool.submit(worker));
+				}
+				for (int i=0; i<numOfThreads; i++) {
+					results.get(i).get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+			for (int i=0; i<tuples.size(); i++) {
+				incNodes.addAllNode2(found[i]);
+			}
+		}
+	}
+
 
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * The order of the six-tuples in one pass of processAlignArray in SixTuplesGeneration.java when the pass
+ * is run by several threads. It is used to get the same results as processing the tuples one by one.
+ *
+ * The overlap distance of a pair is kept in calDist in the orientation of its first request, and for two 
+ * ests with the same length the distance of (i2, i1) may not be the opposite of (i1, i2). In one pass a 
+ * pair is only requested by the tuples of its two nodes, so if the tuple of the other node is before the 
+ * current one, the current one waits for it to finish before the pair is calculated.
+ * The tuples must be started in the order, so the first unfinished tuple never waits.
+ */
+public class TupleOrder {
+	int[] pos;	//position of the tuple of every node in the pass, -1 if the node has no tuple in it
+	CountDownLatch[] done;	//one for each tuple, it is released when the tuple is finished
+
+	public TupleOrder(ArrayList<SixTuple> tuples, int nOfNodes) {
+		pos = new int[nOfNodes];
+		Arrays.fill(pos, -1);
+		done = new CountDownLatch[tuples.size()];
+		for (int i=0; i<tuples.size(); i++) {
+			pos[tuples.get(i).curNode] = i;
+			done[i] = new CountDownLatch(1);
+		}
+	}
+
+	/*
+	 * judge if the tuple of "other" is before the tuple of "index" in the pass.
+	 */
+	public boolean isBefore(int other, int index) {
+		return (pos[other] != -1) && (pos[other] < pos[index]);
+	}
+
+	/*
+	 * wait until the tuple of node idx is finished.
+	 */
+	public void await(int idx) {
+		try {
+			done[pos[idx]].await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * the tuple at position i of the pass is finished.
+	 */
+	public void finish(int i) {
+		done[i].countDown();
+	}
+}